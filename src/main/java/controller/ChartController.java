@@ -340,12 +340,14 @@ public class ChartController {
         dialog.showAndWait().ifPresent(event -> {
             User user = UserService.getCurrentUser();
             if (user != null) {
-                if (event.isGlobal()) {
-                    user.addGlobalEvent(event);
-                } else if (portfolio != null) {
-                    portfolio.addEvent(event);
-                }
-                UserService.save();
+                UserService.modify(() -> {
+                    if (event.isGlobal()) {
+                        user.addGlobalEvent(event);
+                    } else if (portfolio != null) {
+                        portfolio.addEvent(event);
+                    }
+                    UserService.recordEvent(event);
+                });
                 updateCharts();
             }
         });
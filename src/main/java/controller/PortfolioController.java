@@ -1,5 +1,6 @@
 package controller;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -12,10 +13,14 @@ import model.Portfolio;
 import model.User;
 import org.isep.project_work.MainApp;
 import service.ApiService;
+import service.PriceQuote;
+import service.RequestPriority;
 import service.UserService;
 import javafx.scene.control.TextInputDialog;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public class PortfolioController {
@@ -61,6 +66,9 @@ public class PortfolioController {
 
     @FXML
     public void initialize() {
+        // The user is waiting for these prices: ahead of monitoring when rate limited
+        apiService.setPriority(RequestPriority.INTERACTIVE);
+
         if (assetTypeBox != null) {
             assetTypeBox.setItems(FXCollections.observableArrayList(AssetType.values()));
             assetTypeBox.getSelectionModel().select(AssetType.STOCK);
@@ -155,24 +163,34 @@ public class PortfolioController {
         }
 
         Asset asset = new Asset(symbol, symbol, type, qty, buy);
+        // Shown at the purchase price until the live price arrives
+        asset.setCurrentPrice(buy);
+
+        Asset held = UserService.modify(() -> {
+            // Log transaction event
+            if (portfolio != null) {
+                String title = "Added " + qty + " " + symbol;
+                String desc = String.format("Manually added %s units of %s at %s each.", qty, symbol, format2(buy));
+                model.Event event = new model.Event(title, desc, java.time.LocalDate.now(), model.EventType.OTHER,
+                        portfolio.getId());
+                portfolio.addEvent(event);
+                UserService.recordEvent(event);
+            }
 
-        try {
-            double live = apiService.getCurrentPrice(symbol);
-            asset.setCurrentPrice(live > 0 ? live : buy);
-        } catch (Exception e) {
-            asset.setCurrentPrice(buy);
-        }
-
-        // Log transaction event
-        if (portfolio != null) {
-            String title = "Added " + qty + " " + symbol;
-            String desc = String.format("Manually added %s units of %s at %s each.", qty, symbol, format2(buy));
-            portfolio.addEvent(
-                    new model.Event(title, desc, java.time.LocalDate.now(), model.EventType.OTHER, portfolio.getId()));
-        }
+            Asset added = portfolio.addAsset(asset);
+            UserService.recordAssetAdded(portfolio, added);
+            return added;
+        });
 
-        portfolio.addAsset(asset);
-        UserService.save();
+        apiService.getCurrentPriceAsync(symbol).thenAccept(live -> Platform.runLater(() -> {
+            if (live != null && live > 0) {
+                UserService.modify(() -> {
+                    held.setCurrentPrice(live);
+                    UserService.save();
+                });
+                assetsTable.refresh();
+            }
+        }));
 
         clearInputs();
         refreshTable();
@@ -191,8 +209,10 @@ public class PortfolioController {
             Portfolio p = new Portfolio(name);
             User user = UserService.getCurrentUser();
             if (user != null) {
-                user.addPortfolio(p);
-                UserService.save();
+                UserService.modify(() -> {
+                    user.addPortfolio(p);
+                    UserService.recordPortfolioAdded(p);
+                });
                 setupPortfolioSelector();
                 portfolioSelector.setValue(p);
                 setMessage("Portfolio '" + name + "' created.");
@@ -215,8 +235,10 @@ public class PortfolioController {
             Portfolio cloned = portfolio.clone(newName);
             User user = UserService.getCurrentUser();
             if (user != null) {
-                user.addPortfolio(cloned);
-                UserService.save();
+                UserService.modify(() -> {
+                    user.addPortfolio(cloned);
+                    UserService.recordPortfolioAdded(cloned);
+                });
                 setupPortfolioSelector();
                 portfolioSelector.setValue(cloned);
                 setMessage("Portfolio cloned as '" + newName + "'");
@@ -240,17 +262,22 @@ public class PortfolioController {
             return;
 
         try {
-            importService.importCSV(file, portfolio);
+            service.ImportResult result = importService.importBulk(file, portfolio);
 
             // Log import event
             String title = "CSV Data Import";
-            String desc = "Successfully imported transaction data from: " + file.getName();
-            portfolio.addEvent(
-                    new model.Event(title, desc, java.time.LocalDate.now(), model.EventType.OTHER, portfolio.getId()));
-
-            UserService.save();
+            String desc = "Successfully imported " + result.getImported() + " transactions from: " + file.getName();
+            model.Event event = new model.Event(title, desc, java.time.LocalDate.now(), model.EventType.OTHER,
+                    portfolio.getId());
+            // the import itself was already saved in full by ImportService
+            UserService.modify(() -> {
+                portfolio.addEvent(event);
+                UserService.recordEvent(event);
+            });
             refreshTable();
-            setMessage("Import successful ✅");
+            setMessage("Imported " + result.getImported() + " transactions"
+                    + (result.getRejectedRows() > 0 ? " (" + result.getRejectedRows() + " rejected)" : "")
+                    + " in " + result.getElapsedMs() + " ms ✅");
         } catch (Exception e) {
             showError("CSV Import Failed", e.getMessage());
         }
@@ -258,6 +285,13 @@ public class PortfolioController {
 
     @FXML
     private void refreshPrices() {
+        refreshPrices(true);
+    }
+
+    /**
+     * @param followStale whether to show the prices again once stale ones are refreshed
+     */
+    private void refreshPrices(boolean followStale) {
         setMessage("");
 
         if (!ensurePortfolio())
@@ -268,18 +302,46 @@ public class PortfolioController {
             return;
         }
 
-        for (Asset a : portfolio.getAssets()) {
-            try {
-                double live = apiService.getCurrentPrice(a.getSymbol());
-                if (live > 0)
-                    a.setCurrentPrice(live);
-            } catch (Exception ignored) {
-            }
+        Portfolio target = portfolio;
+        List<String> symbols = new ArrayList<>();
+        for (Asset a : target.getAssets()) {
+            symbols.add(a.getSymbol());
         }
+        setMessage("Refreshing prices...");
+        // Fetched off the FX thread, applied back on it to the assets held by then
+        apiService.getQuotesAsync(symbols).thenAccept(live -> Platform.runLater(() -> {
+            long[] oldest = { 0 };
+            List<String> stale = new ArrayList<>();
+            UserService.modify(() -> {
+                for (PriceQuote quote : live.values()) {
+                    Asset a = target.findAsset(quote.getSymbol());
+                    if (a != null && quote.getPrice() > 0) {
+                        a.setCurrentPrice(quote.getPrice());
+                        if (quote.isStale()) {
+                            oldest[0] = Math.max(oldest[0], quote.getAgeMs());
+                            stale.add(quote.getSymbol());
+                        }
+                    }
+                }
+                UserService.save();
+            });
+            assetsTable.refresh();
+            if (oldest[0] > 0) {
+                setMessage("Prices updated, some are " + formatAge(oldest[0]) + " old and being refreshed");
+                if (followStale)
+                    apiService.whenRefreshed(stale).thenRun(() -> Platform.runLater(() -> refreshPrices(false)));
+            } else
+                setMessage("Prices updated ✅");
+        }));
+    }
 
-        UserService.save();
-        assetsTable.refresh();
-        setMessage("Prices updated ✅");
+    private static String formatAge(long ageMs) {
+        long seconds = ageMs / 1000;
+        if (seconds < 120)
+            return seconds + "s";
+        if (seconds < 2 * 3600)
+            return seconds / 60 + " min";
+        return seconds / 3600 + "h";
     }
 
     @FXML
@@ -295,8 +357,10 @@ public class PortfolioController {
             return;
         }
 
-        portfolio.removeAsset(selected);
-        UserService.save();
+        UserService.modify(() -> {
+            portfolio.removeAsset(selected);
+            UserService.recordAssetRemoved(portfolio, selected);
+        });
         refreshTable();
         setMessage("Removed ");
     }
@@ -76,7 +76,7 @@ public class SavingsController {
         var user = UserService.getCurrentUser();
 
         if (user.getSavingsAccounts() == null) {
-            user.setSavingsAccounts(new ArrayList<>());
+            UserService.modify(() -> user.setSavingsAccounts(new ArrayList<>()));
         }
 
         if (!user.getSavingsAccounts().isEmpty()) {
@@ -91,9 +91,10 @@ public class SavingsController {
 
         // create one account, simple student approach
         SavingsAccount created = new SavingsAccount(name, 0.0, 0.0);
-        user.getSavingsAccounts().add(created);
-
-        UserService.save();
+        UserService.modify(() -> {
+            user.getSavingsAccounts().add(created);
+            UserService.recordAccountAdded(created);
+        });
 
         currentAccount = created;
         if (accountInfoLabel != null) accountInfoLabel.setText("Account created: " + name);
@@ -116,20 +117,14 @@ public class SavingsController {
         String note = (noteField == null) ? "" : noteField.getText().trim();
 
         try {
+            // note is optional and stored on the transaction itself
+            String txNote = note.isBlank() ? null : note;
             if ("Withdraw".equalsIgnoreCase(type)) {
-                savingsService.withdraw(currentAccount, amount);
+                savingsService.withdraw(currentAccount, amount, txNote);
             } else {
-                savingsService.deposit(currentAccount, amount);
-            }
-
-            // attach note to latest transaction (optional)
-            if (!note.isBlank() && currentAccount.getTransactions() != null && !currentAccount.getTransactions().isEmpty()) {
-                Transaction last = currentAccount.getTransactions().get(currentAccount.getTransactions().size() - 1);
-                last.setNotes(note);
+                savingsService.deposit(currentAccount, amount, txNote);
             }
 
-            UserService.save();
-
             if (amountField != null) amountField.clear();
             if (noteField != null) noteField.clear();
 
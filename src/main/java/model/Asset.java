@@ -1,12 +1,18 @@
 package model;
 
-public class Asset {
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Asset implements Revisioned {
     private String symbol;
     private String name;
     private AssetType type;
     private double quantity;
     private double avgPurchasePrice;
     private double currentPrice;
+    // Not persisted, see Revision
+    private long revision;
 
     public Asset() {
     }
@@ -32,6 +38,7 @@ public class Asset {
 
     public void setSymbol(String symbol) {
         this.symbol = symbol;
+        this.revision = Revision.next();
     }
 
     public String getName() {
@@ -40,6 +47,7 @@ public class Asset {
 
     public void setName(String name) {
         this.name = name;
+        this.revision = Revision.next();
     }
 
     public AssetType getType() {
@@ -48,6 +56,7 @@ public class Asset {
 
     public void setType(AssetType type) {
         this.type = type;
+        this.revision = Revision.next();
     }
 
     public double getQuantity() {
@@ -56,6 +65,7 @@ public class Asset {
 
     public void setQuantity(double quantity) {
         this.quantity = quantity;
+        this.revision = Revision.next();
     }
 
     public double getAvgPurchasePrice() {
@@ -64,6 +74,7 @@ public class Asset {
 
     public void setAvgPurchasePrice(double avgPurchasePrice) {
         this.avgPurchasePrice = avgPurchasePrice;
+        this.revision = Revision.next();
     }
 
     public double getCurrentPrice() {
@@ -72,17 +83,28 @@ public class Asset {
 
     public void setCurrentPrice(double currentPrice) {
         this.currentPrice = currentPrice;
+        this.revision = Revision.next();
     }
 
+    // Computed values (do NOT store in JSON)
+    @JsonIgnore
     public double getValue() {
         return quantity * currentPrice;
     }
 
+    @JsonIgnore
     public double getCostBasis() {
         return quantity * avgPurchasePrice;
     }
 
+    @JsonIgnore
     public double getProfitLoss() {
         return getValue() - getCostBasis();
     }
+
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return revision;
+    }
 }
\ No newline at end of file
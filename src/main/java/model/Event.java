@@ -1,14 +1,20 @@
 package model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.time.LocalDate;
 
-public class Event {
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Event implements Revisioned {
     private String id;
     private String title;
     private String description;
     private LocalDate date;
     private EventType type;
     private String portfolioId; // null if global event
+    // Not persisted, see Revision
+    private long revision;
 
     public Event() {
         this.id = java.util.UUID.randomUUID().toString();
@@ -33,6 +39,7 @@ public class Event {
 
     public void setId(String id) {
         this.id = id;
+        this.revision = Revision.next();
     }
 
     public String getTitle() {
@@ -41,6 +48,7 @@ public class Event {
 
     public void setTitle(String title) {
         this.title = title;
+        this.revision = Revision.next();
     }
 
     public String getDescription() {
@@ -49,6 +57,7 @@ public class Event {
 
     public void setDescription(String description) {
         this.description = description;
+        this.revision = Revision.next();
     }
 
     public LocalDate getDate() {
@@ -57,6 +66,7 @@ public class Event {
 
     public void setDate(LocalDate date) {
         this.date = date;
+        this.revision = Revision.next();
     }
 
     public EventType getType() {
@@ -65,6 +75,7 @@ public class Event {
 
     public void setType(EventType type) {
         this.type = type;
+        this.revision = Revision.next();
     }
 
     public String getPortfolioId() {
@@ -73,8 +84,10 @@ public class Event {
 
     public void setPortfolioId(String portfolioId) {
         this.portfolioId = portfolioId;
+        this.revision = Revision.next();
     }
 
+    @JsonIgnore
     public boolean isGlobal() {
         return portfolioId == null || portfolioId.isEmpty();
     }
@@ -83,4 +96,10 @@ public class Event {
     public String toString() {
         return String.format("[%s] %s - %s", date, type.getDisplayName(), title);
     }
+
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return revision;
+    }
 }
\ No newline at end of file
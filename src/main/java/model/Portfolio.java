@@ -1,10 +1,16 @@
 package model;
 
-import java.util.ArrayList;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
-public class Portfolio {
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Portfolio implements Revisioned {
     private String id;
     private String name;
     private String description;
@@ -13,13 +19,22 @@ public class Portfolio {
     private List<Event> events;
     private List<PortfolioSnapshot> snapshots;
     private Currency referenceCurrency;
+    // Not persisted, see Revision
+    private long revision;
+
+    // Upper case symbol -> asset held. Kept up to date by the methods below, rebuilt when the
+    // list was replaced (e.g. by Jackson) or changed through getAssets()
+    private Map<String, Asset> assetIndex;
+    private List<Asset> indexedAssets;
+    private int indexedModCount;
+    private boolean duplicateSymbols;
 
     public Portfolio() {
         this.id = UUID.randomUUID().toString();
-        this.assets = new ArrayList<>();
-        this.transactionHistory = new ArrayList<>();
-        this.events = new ArrayList<>();
-        this.snapshots = new ArrayList<>();
+        this.assets = new TrackedList<>();
+        this.transactionHistory = new TrackedList<>();
+        this.events = new TrackedList<>();
+        this.snapshots = new TrackedList<>();
         this.referenceCurrency = Currency.USD;
     }
 
@@ -48,36 +63,142 @@ public class Portfolio {
         return cloned;
     }
 
-    public void addAsset(Asset asset) {
-        for (Asset existing : assets) {
-            if (existing.getSymbol().equalsIgnoreCase(asset.getSymbol())) {
-                double totalQty = existing.getQuantity() + asset.getQuantity();
-                double avgPrice = ((existing.getQuantity() * existing.getAvgPurchasePrice())
-                        + (asset.getQuantity() * asset.getAvgPurchasePrice())) / totalQty;
-                existing.setQuantity(totalQty);
-                existing.setAvgPurchasePrice(avgPrice);
-                return;
-            }
+    /**
+     * The asset held for a symbol, whatever its case, or null. Constant time.
+     */
+    public Asset findAsset(String symbol) {
+        if (symbol == null) {
+            return null;
         }
-        assets.add(asset);
+        return indexed(symbol);
+    }
+
+    /**
+     * Adds an asset or merges it into the holding with the same symbol.
+     * Returns the asset actually held by the portfolio.
+     */
+    public Asset addAsset(Asset asset) {
+        Asset existing = findAsset(asset.getSymbol());
+        if (existing != null) {
+            double totalQty = existing.getQuantity() + asset.getQuantity();
+            double avgPrice = ((existing.getQuantity() * existing.getAvgPurchasePrice())
+                    + (asset.getQuantity() * asset.getAvgPurchasePrice())) / totalQty;
+            existing.setQuantity(totalQty);
+            existing.setAvgPurchasePrice(avgPrice);
+            return existing;
+        }
+        append(asset);
+        return asset;
+    }
+
+    /**
+     * Adds an asset or replaces the holding with the same symbol, without merging.
+     */
+    public void putAsset(Asset asset) {
+        Asset existing = indexed(asset.getSymbol());
+        if (existing == null) {
+            append(asset);
+            return;
+        }
+        assets.set(positionOf(existing), asset);
+        assetIndex.put(keyOf(asset.getSymbol()), asset);
+        indexedModCount = modificationCount();
     }
 
     public void removeAsset(Asset asset) {
-        assets.removeIf(a -> a.getSymbol().equalsIgnoreCase(asset.getSymbol()));
+        Asset held = indexed(asset.getSymbol());
+        if (held == null) {
+            return;
+        }
+        if (duplicateSymbols) {
+            // Every holding of the symbol goes, the first one is the indexed one
+            assets.removeIf(a -> a.getSymbol() != null && a.getSymbol().equalsIgnoreCase(asset.getSymbol()));
+        } else {
+            assets.remove(positionOf(held));
+        }
+        assetIndex.remove(keyOf(asset.getSymbol()));
+        indexedModCount = modificationCount();
+    }
+
+    private void append(Asset asset) {
+        ensureIndex();
+        assets.add(asset);
+        if (asset.getSymbol() != null) {
+            assetIndex.putIfAbsent(keyOf(asset.getSymbol()), asset);
+        }
+        indexedModCount = modificationCount();
+    }
+
+    private Asset indexed(String symbol) {
+        ensureIndex();
+        Asset asset = assetIndex.get(keyOf(symbol));
+        if (asset != null && (asset.getSymbol() == null || !asset.getSymbol().equalsIgnoreCase(symbol))) {
+            // Symbol changed on the asset itself, which the list cannot see
+            indexedAssets = null;
+            ensureIndex();
+            asset = assetIndex.get(keyOf(symbol));
+        }
+        return asset;
+    }
+
+    // Scans by identity, a list position is not worth indexing as removals shift them all
+    private int positionOf(Asset held) {
+        for (int i = 0; i < assets.size(); i++) {
+            if (assets.get(i) == held) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureIndex() {
+        if (assetIndex != null && indexedAssets == assets && indexedModCount == modificationCount()) {
+            return;
+        }
+        if (assets == null) {
+            assets = new TrackedList<>();
+        }
+        Map<String, Asset> index = new HashMap<>(Math.max(16, assets.size() * 2));
+        boolean duplicates = false;
+        for (Asset asset : assets) {
+            String symbol = asset.getSymbol();
+            // The first holding of a symbol wins, as with the former linear scans
+            if (symbol != null && index.putIfAbsent(keyOf(symbol), asset) != null) {
+                duplicates = true;
+            }
+        }
+        assetIndex = index;
+        indexedAssets = assets;
+        indexedModCount = modificationCount();
+        duplicateSymbols = duplicates;
     }
 
+    private int modificationCount() {
+        // Lists are always wrapped in a TrackedList by the setters
+        return assets instanceof TrackedList ? ((TrackedList<Asset>) assets).getModificationCount() : -1;
+    }
+
+    private static String keyOf(String symbol) {
+        return symbol.toUpperCase(Locale.ROOT);
+    }
+
+    // Computed values (do NOT store in JSON)
+    @JsonIgnore
     public double getTotalValue() {
         return assets.stream().mapToDouble(Asset::getValue).sum();
     }
 
+    @JsonIgnore
     public double getTotalCost() {
         return assets.stream().mapToDouble(Asset::getCostBasis).sum();
     }
 
+    @JsonIgnore
     public double getProfitLoss() {
         return getTotalValue() - getTotalCost();
     }
 
+    @JsonIgnore
     public double getProfitLossPercent() {
         double cost = getTotalCost();
         return cost > 0 ? (getProfitLoss() / cost) * 100 : 0;
@@ -89,6 +210,7 @@ public class Portfolio {
 
     public void setId(String id) {
         this.id = id;
+        this.revision = Revision.next();
     }
 
     public String getName() {
@@ -97,6 +219,7 @@ public class Portfolio {
 
     public void setName(String name) {
         this.name = name;
+        this.revision = Revision.next();
     }
 
     public String getDescription() {
@@ -105,6 +228,7 @@ public class Portfolio {
 
     public void setDescription(String description) {
         this.description = description;
+        this.revision = Revision.next();
     }
 
     public List<Asset> getAssets() {
@@ -112,7 +236,8 @@ public class Portfolio {
     }
 
     public void setAssets(List<Asset> assets) {
-        this.assets = assets;
+        this.assets = TrackedList.wrap(assets);
+        this.revision = Revision.next();
     }
 
     public List<Transaction> getTransactionHistory() {
@@ -120,7 +245,8 @@ public class Portfolio {
     }
 
     public void setTransactionHistory(List<Transaction> transactionHistory) {
-        this.transactionHistory = transactionHistory;
+        this.transactionHistory = TrackedList.wrap(transactionHistory);
+        this.revision = Revision.next();
     }
 
     public List<Event> getEvents() {
@@ -128,7 +254,8 @@ public class Portfolio {
     }
 
     public void setEvents(List<Event> events) {
-        this.events = events;
+        this.events = TrackedList.wrap(events);
+        this.revision = Revision.next();
     }
 
     public List<PortfolioSnapshot> getSnapshots() {
@@ -136,7 +263,8 @@ public class Portfolio {
     }
 
     public void setSnapshots(List<PortfolioSnapshot> snapshots) {
-        this.snapshots = snapshots;
+        this.snapshots = TrackedList.wrap(snapshots);
+        this.revision = Revision.next();
     }
 
     public Currency getReferenceCurrency() {
@@ -145,6 +273,7 @@ public class Portfolio {
 
     public void setReferenceCurrency(Currency referenceCurrency) {
         this.referenceCurrency = referenceCurrency;
+        this.revision = Revision.next();
     }
 
     public void addEvent(Event event) {
@@ -152,16 +281,27 @@ public class Portfolio {
         this.events.add(event);
     }
 
-    public void recordSnapshot() {
+    public PortfolioSnapshot recordSnapshot() {
         PortfolioSnapshot snapshot = new PortfolioSnapshot(
                 java.time.LocalDate.now(),
                 getTotalValue(),
                 this.id);
         this.snapshots.add(snapshot);
+        return snapshot;
     }
 
     @Override
     public String toString() {
         return name + (description != null && !description.isEmpty() ? " - " + description : "");
     }
+
+    /**
+     * Revision of the portfolio and everything it holds, see Revision.
+     */
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return Math.max(revision, Math.max(Math.max(Revision.of(assets), Revision.of(transactionHistory)),
+                Math.max(Revision.of(events), Revision.of(snapshots))));
+    }
 }
\ No newline at end of file
@@ -1,12 +1,18 @@
 package model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.time.LocalDate;
 
 
-public class PortfolioSnapshot {
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PortfolioSnapshot implements Revisioned {
     private LocalDate date;
     private double totalValue;
     private String portfolioId;
+    // Not persisted, see Revision
+    private long revision;
 
     public PortfolioSnapshot() {
     }
@@ -23,6 +29,7 @@ public class PortfolioSnapshot {
 
     public void setDate(LocalDate date) {
         this.date = date;
+        this.revision = Revision.next();
     }
 
     public double getTotalValue() {
@@ -31,6 +38,7 @@ public class PortfolioSnapshot {
 
     public void setTotalValue(double totalValue) {
         this.totalValue = totalValue;
+        this.revision = Revision.next();
     }
 
     public String getPortfolioId() {
@@ -39,5 +47,12 @@ public class PortfolioSnapshot {
 
     public void setPortfolioId(String portfolioId) {
         this.portfolioId = portfolioId;
+        this.revision = Revision.next();
+    }
+
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return revision;
     }
 }
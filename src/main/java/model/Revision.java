@@ -0,0 +1,41 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change tracking of the model.
+ *
+ * Every change stamps the changed object (or list) with a value of a global counter, and the
+ * revision of a parent is the highest stamp found below it. A change anywhere in a portfolio
+ * therefore gives the portfolio and its user a revision they never had before, which lets the
+ * persistence layer tell whether they changed since the last save without comparing content.
+ */
+public final class Revision {
+
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private Revision() {
+    }
+
+    public static long next() {
+        return CLOCK.incrementAndGet();
+    }
+
+    /**
+     * Highest revision of the list itself (elements added, removed, replaced) and its elements.
+     */
+    public static long of(List<? extends Revisioned> list) {
+        if (list == null) {
+            return 0;
+        }
+        // Lists not created through the model setters cannot tell when they change
+        long revision = list instanceof TrackedList ? ((TrackedList<?>) list).getRevision() : next();
+        for (Revisioned element : list) {
+            if (element != null) {
+                revision = Math.max(revision, element.getRevision());
+            }
+        }
+        return revision;
+    }
+}
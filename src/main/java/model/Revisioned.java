@@ -0,0 +1,12 @@
+package model;
+
+/**
+ * A model object whose changes are tracked, see Revision.
+ */
+public interface Revisioned {
+
+    /**
+     * Revision of the object and everything it contains; it only moves forward.
+     */
+    long getRevision();
+}
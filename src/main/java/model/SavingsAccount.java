@@ -1,13 +1,18 @@
 package model;
 
-import java.util.ArrayList;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.util.List;
 
-public class SavingsAccount {
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SavingsAccount implements Revisioned {
     private String name;
     private double balance;
     private double interestRate;
-    private List<Transaction> transactions = new ArrayList<>();
+    private List<Transaction> transactions = new TrackedList<>();
+    // Not persisted, see Revision
+    private long revision;
 
     public SavingsAccount() {
     }
@@ -24,6 +29,7 @@ public class SavingsAccount {
 
     public void setName(String name) {
         this.name = name;
+        this.revision = Revision.next();
     }
 
     public double getBalance() {
@@ -32,6 +38,7 @@ public class SavingsAccount {
 
     public void setBalance(double balance) {
         this.balance = balance;
+        this.revision = Revision.next();
     }
 
     public double getInterestRate() {
@@ -40,6 +47,7 @@ public class SavingsAccount {
 
     public void setInterestRate(double interestRate) {
         this.interestRate = interestRate;
+        this.revision = Revision.next();
     }
 
     public List<Transaction> getTransactions() {
@@ -47,18 +55,27 @@ public class SavingsAccount {
     }
 
     public void setTransactions(List<Transaction> transactions) {
-        this.transactions = transactions;
+        this.transactions = TrackedList.wrap(transactions);
+        this.revision = Revision.next();
     }
 
     public void deposit(double amount) {
         this.balance += amount;
+        this.revision = Revision.next();
     }
 
     public void withdraw(double amount) {
         if (amount <= balance) {
             this.balance -= amount;
+            this.revision = Revision.next();
         } else {
             throw new IllegalArgumentException("Insufficient funds");
         }
     }
+
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return Math.max(revision, Revision.of(transactions));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ArrayList knowing when it was last changed.
+ * Structural changes are detected through modCount (this also covers iterators and removeIf),
+ * replacements through set.
+ */
+public class TrackedList<E> extends ArrayList<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    private long revision;
+    private int seenModCount;
+    private int replacements;
+
+    public TrackedList() {
+    }
+
+    public TrackedList(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    public TrackedList(Collection<? extends E> elements) {
+        super(elements);
+    }
+
+    /**
+     * Returns the list itself if it is already tracked, a tracked copy otherwise.
+     */
+    public static <E> List<E> wrap(List<E> list) {
+        if (list == null || list instanceof TrackedList) {
+            return list;
+        }
+        return new TrackedList<>(list);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E previous = super.set(index, element);
+        revision = Revision.next();
+        replacements++;
+        return previous;
+    }
+
+    /**
+     * Grows with every change, structural or set, so that an index over the list can tell
+     * whether it is still valid.
+     */
+    public int getModificationCount() {
+        return modCount + replacements;
+    }
+
+    public long getRevision() {
+        // A change made since the last look gets a revision newer than anything seen so far
+        if (modCount != seenModCount) {
+            seenModCount = modCount;
+            revision = Revision.next();
+        }
+        return revision;
+    }
+}
@@ -1,9 +1,12 @@
 package model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.time.LocalDateTime;
 
-public class Transaction {
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Transaction implements Revisioned {
     private String assetSymbol;
     private String type; // BUY, SELL, DEPOSIT, WITHDRAWAL
     private double quantity;
@@ -15,6 +18,8 @@ public class Transaction {
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp;
+    // Not persisted, see Revision
+    private long revision;
 
     public Transaction() {
     }
@@ -33,8 +38,10 @@ public class Transaction {
 
     public void setAssetSymbol(String assetSymbol) {
         this.assetSymbol = assetSymbol;
+        this.revision = Revision.next();
     }
 
+    @JsonIgnore
     public String getSymbol() {
         return assetSymbol;
     } // Alias
@@ -45,6 +52,7 @@ public class Transaction {
 
     public void setType(String type) {
         this.type = type;
+        this.revision = Revision.next();
     }
 
     public double getQuantity() {
@@ -53,6 +61,7 @@ public class Transaction {
 
     public void setQuantity(double quantity) {
         this.quantity = quantity;
+        this.revision = Revision.next();
     }
 
     public double getPrice() {
@@ -61,6 +70,7 @@ public class Transaction {
 
     public void setPrice(double price) {
         this.price = price;
+        this.revision = Revision.next();
     }
 
     public LocalDateTime getTimestamp() {
@@ -69,6 +79,7 @@ public class Transaction {
 
     public void setTimestamp(LocalDateTime timestamp) {
         this.timestamp = timestamp;
+        this.revision = Revision.next();
     }
 
     public double getFees() {
@@ -77,6 +88,7 @@ public class Transaction {
 
     public void setFees(double fees) {
         this.fees = fees;
+        this.revision = Revision.next();
     }
 
     public double getTotal() {
@@ -85,6 +97,7 @@ public class Transaction {
 
     public void setTotal(double total) {
         this.total = total;
+        this.revision = Revision.next();
     }
 
     public String getCurrency() {
@@ -93,6 +106,7 @@ public class Transaction {
 
     public void setCurrency(String currency) {
         this.currency = currency;
+        this.revision = Revision.next();
     }
 
     public String getNotes() {
@@ -101,8 +115,10 @@ public class Transaction {
 
     public void setNotes(String notes) {
         this.notes = notes;
+        this.revision = Revision.next();
     }
 
+    @JsonIgnore
     public double getValue() {
         return quantity * price;
     }
@@ -113,4 +129,10 @@ public class Transaction {
                 timestamp != null ? timestamp.toLocalDate() : "?",
                 type, quantity, assetSymbol, price);
     }
+
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return revision;
+    }
 }
\ No newline at end of file
@@ -3,11 +3,10 @@ package model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class User {
+public class User implements Revisioned {
 
     private String name;
     private String email;
@@ -18,11 +17,13 @@ public class User {
     private List<Event> globalEvents;
 
     private Currency preferredCurrency;
+    // Not persisted, see Revision
+    private long revision;
 
     public User() {
-        this.portfolios = new ArrayList<>();
-        this.savingsAccounts = new ArrayList<>();
-        this.globalEvents = new ArrayList<>();
+        this.portfolios = new TrackedList<>();
+        this.savingsAccounts = new TrackedList<>();
+        this.globalEvents = new TrackedList<>();
         this.preferredCurrency = Currency.USD;
     }
 
@@ -34,25 +35,25 @@ public class User {
     }
 
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) { this.name = name; this.revision = Revision.next(); }
 
     public String getEmail() { return email; }
-    public void setEmail(String email) { this.email = email; }
+    public void setEmail(String email) { this.email = email; this.revision = Revision.next(); }
 
     public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
+    public void setPassword(String password) { this.password = password; this.revision = Revision.next(); }
 
     public List<Portfolio> getPortfolios() { return portfolios; }
-    public void setPortfolios(List<Portfolio> portfolios) { this.portfolios = portfolios; }
+    public void setPortfolios(List<Portfolio> portfolios) { this.portfolios = TrackedList.wrap(portfolios); this.revision = Revision.next(); }
 
     public List<SavingsAccount> getSavingsAccounts() { return savingsAccounts; }
-    public void setSavingsAccounts(List<SavingsAccount> savingsAccounts) { this.savingsAccounts = savingsAccounts; }
+    public void setSavingsAccounts(List<SavingsAccount> savingsAccounts) { this.savingsAccounts = TrackedList.wrap(savingsAccounts); this.revision = Revision.next(); }
 
     public List<Event> getGlobalEvents() { return globalEvents; }
-    public void setGlobalEvents(List<Event> globalEvents) { this.globalEvents = globalEvents; }
+    public void setGlobalEvents(List<Event> globalEvents) { this.globalEvents = TrackedList.wrap(globalEvents); this.revision = Revision.next(); }
 
     public Currency getPreferredCurrency() { return preferredCurrency; }
-    public void setPreferredCurrency(Currency preferredCurrency) { this.preferredCurrency = preferredCurrency; }
+    public void setPreferredCurrency(Currency preferredCurrency) { this.preferredCurrency = preferredCurrency; this.revision = Revision.next(); }
 
     public void addPortfolio(Portfolio portfolio) {
         if (portfolio != null) portfolios.add(portfolio);
@@ -92,4 +93,14 @@ public class User {
     public double getNetWorth() {
         return getTotalPortfolioValue() + getTotalSavingsBalance();
     }
+
+    /**
+     * Revision of the whole user graph, see Revision.
+     */
+    @JsonIgnore
+    @Override
+    public long getRevision() {
+        return Math.max(revision, Math.max(Revision.of(portfolios),
+                Math.max(Revision.of(savingsAccounts), Revision.of(globalEvents))));
+    }
 }
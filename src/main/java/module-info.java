@@ -4,6 +4,7 @@ module org.isep.project_work {
     requires com.fasterxml.jackson.databind;
     requires com.fasterxml.jackson.datatype.jsr310;
     requires java.sql;
+    requires java.net.http;
 
     opens controller to javafx.fxml;
     opens org.isep.project_work to javafx.fxml;
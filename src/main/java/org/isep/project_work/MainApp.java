@@ -19,6 +19,13 @@ public class MainApp extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        // Pending background saves must reach the disk before the JVM exits
+        service.UserService.shutdown();
+        service.ApiService.shutdown();
+    }
+
     public static void showLoginScreen() {
         loadScene("/org/isep/project_work/login.fxml");
     }
@@ -0,0 +1,226 @@
+package service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Stock prices from Alpha Vantage. GLOBAL_QUOTE takes a single symbol, so the symbols of a
+ * batch are queried concurrently. Responses are parsed as they arrive with a streaming
+ * parser, skipping everything but the fields we need.
+ */
+public class AlphaVantagePriceProvider implements PriceProvider {
+
+    private static final String DEFAULT_BASE_URL = "https://www.alphavantage.co";
+    private static volatile String baseUrl = DEFAULT_BASE_URL;
+    private static volatile String apiKey = "demo";
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final HttpFetcher http;
+
+    public AlphaVantagePriceProvider(HttpFetcher http) {
+        this.http = http;
+    }
+
+    public static void setApiKey(String key) {
+        apiKey = key;
+    }
+
+    /**
+     * Scheme, host and port of the API, null restores the default.
+     */
+    public static void setBaseUrl(String url) {
+        baseUrl = url != null ? url : DEFAULT_BASE_URL;
+    }
+
+    @Override
+    public String getName() {
+        return "alphavantage";
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    /**
+     * Fails with a RateLimitException if any quote was refused for going over the limit.
+     */
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols) {
+        Map<String, CompletableFuture<Double>> quotes = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            quotes.put(symbol, fetchStockPrice(symbol));
+        }
+        return CompletableFuture.allOf(quotes.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, Double> prices = new HashMap<>();
+            for (Map.Entry<String, CompletableFuture<Double>> quote : quotes.entrySet()) {
+                double price = quote.getValue().join();
+                if (price > 0) {
+                    prices.put(quote.getKey(), price);
+                }
+            }
+            return prices;
+        });
+    }
+
+    /**
+     * GLOBAL_QUOTE, -1 when the symbol is unknown or the request failed.
+     */
+    private CompletableFuture<Double> fetchStockPrice(String symbol) {
+        String urlStr = String.format(
+                "%s/query?function=GLOBAL_QUOTE&symbol=%s&apikey=%s",
+                baseUrl, HttpFetcher.encode(symbol), HttpFetcher.encode(apiKey));
+
+        return http.get(urlStr, AlphaVantagePriceProvider::parseGlobalQuote).handle((price, error) -> {
+            if (error instanceof RateLimitException || error != null && error.getCause() instanceof RateLimitException) {
+                throw new CompletionException(error);
+            }
+            if (error != null) {
+                System.err.println("Error fetching stock price: " + error.getMessage());
+                return -1.0;
+            }
+            return price;
+        });
+    }
+
+    /**
+     * {"Global Quote": {"01. symbol": "IBM", ..., "05. price": "123.4500", ...}}, read up to
+     * the price only.
+     */
+    static double parseGlobalQuote(InputStream body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return -1;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (checkRateLimit(parser, field)) {
+                    continue;
+                }
+                if (parser.nextToken() == JsonToken.START_OBJECT && "Global Quote".equals(field)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String quoteField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("05. price".equals(quoteField)) {
+                            return parser.getValueAsDouble(-1);
+                        }
+                        parser.skipChildren();
+                    }
+                    return -1;
+                }
+                parser.skipChildren();
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * TIME_SERIES_DAILY. The compact output only holds the last 100 trading days, older
+     * ranges need the full one.
+     */
+    @Override
+    public CompletableFuture<PriceSeries> getDailySeries(String symbol, LocalDate from, LocalDate to) {
+        String outputSize = from.isBefore(LocalDate.now().minusDays(100)) ? "full" : "compact";
+        String urlStr = String.format(
+                "%s/query?function=TIME_SERIES_DAILY&symbol=%s&outputsize=%s&apikey=%s",
+                baseUrl, HttpFetcher.encode(symbol), outputSize, HttpFetcher.encode(apiKey));
+
+        return http.get(urlStr, body -> parseDailySeries(symbol, from, to, body));
+    }
+
+    /**
+     * {"Meta Data": {...}, "Time Series (Daily)": {"2024-01-02": {"1. open": "...",
+     * "4. close": "185.64", ...}, ...}}, newest first. Only the closes between from and to
+     * are kept, straight into the series columns.
+     */
+    static PriceSeries parseDailySeries(String symbol, LocalDate from, LocalDate to, InputStream body)
+            throws IOException {
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        int[] days = new int[128];
+        double[] closes = new double[128];
+        int count = 0;
+        boolean found = false;
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected daily series for " + symbol);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (checkRateLimit(parser, field)) {
+                    continue;
+                }
+                if (parser.nextToken() != JsonToken.START_OBJECT || !"Time Series (Daily)".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                found = true;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    int day = PriceSeries.parseEpochDay(
+                            parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    if (parser.nextToken() != JsonToken.START_OBJECT || day < first || day > last) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    double close = Double.NaN;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String priceField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("4. close".equals(priceField)) {
+                            close = parser.getValueAsDouble(Double.NaN);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    if (!Double.isNaN(close)) {
+                        if (count == days.length) {
+                            days = Arrays.copyOf(days, count * 2);
+                            closes = Arrays.copyOf(closes, count * 2);
+                        }
+                        days[count] = day;
+                        closes[count++] = close;
+                    }
+                }
+            }
+        }
+        if (!found) {
+            // Unknown symbol
+            throw new IOException("No daily series for " + symbol);
+        }
+        return PriceSeries.ofColumns(symbol, days, closes, count);
+    }
+
+    /**
+     * Over the limit, Alpha Vantage answers 200 with only a "Note" or "Information" message,
+     * e.g. {"Note": "Thank you for using Alpha Vantage! Our standard API call frequency is 5 calls
+     * per minute..."}. Called on each top level field, before reading its value. Returns true
+     * when the field was such a message, not about the limit, and its value was consumed: the
+     * caller goes on with the next field.
+     */
+    private static boolean checkRateLimit(JsonParser parser, String field) throws IOException {
+        if (!"Note".equals(field) && !"Information".equals(field)) {
+            return false;
+        }
+        if (parser.nextToken() == JsonToken.VALUE_STRING) {
+            String message = parser.getText();
+            String lower = message.toLowerCase();
+            if (lower.contains("call frequency") || lower.contains("rate limit") || lower.contains("requests per")) {
+                throw new RateLimitException(message);
+            }
+        }
+        parser.skipChildren();
+        return true;
+    }
+}
@@ -1,220 +1,381 @@
 package service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for fetching real-time market data
- * Uses mock data by default, can be configured for real APIs
+ * Prices come from a PriceProvider: mock data by default, real APIs or a recorded replay
+ * when configured (see PriceProvider.PROVIDER_PROPERTY)
  */
 public class ApiService {
 
-    // API Keys (set via setApiKey method)
-    private static String alphaVantageKey = "demo";
-    private static String coinGeckoKey = null; // CoinGecko has free tier
-
-    // Cache for prices
-    private static final Map<String, Double> priceCache = new HashMap<>();
-    private static final Map<String, Long> cacheTimestamps = new HashMap<>();
+    // Cache for prices, one per provider, shared by all instances and used from several threads
     private static final long CACHE_DURATION_MS = 60 * 1000; // 1 minute cache
+    private static final int CACHE_MAX_SYMBOLS = 1000;
+    private static final Map<String, PriceCache> priceCaches = new ConcurrentHashMap<>();
+    private static volatile long softTtlMs = CACHE_DURATION_MS;
+    private static volatile long hardTtlMs = CACHE_DURATION_MS;
+
+    // Refresh-ahead TTLs, e.g. -Dportfolio.prices.softTtlMs=45000 -Dportfolio.prices.hardTtlMs=600000
+    public static final String SOFT_TTL_PROPERTY = "portfolio.prices.softTtlMs";
+    public static final String HARD_TTL_PROPERTY = "portfolio.prices.hardTtlMs";
+
+    // Last known prices of live providers, saved periodically and on shutdown, e.g.
+    // -Dportfolio.prices.warmMaxAgeMs=86400000 -Dportfolio.prices.warmSaveIntervalMs=300000
+    public static final String WARM_MAX_AGE_PROPERTY = "portfolio.prices.warmMaxAgeMs";
+    public static final String WARM_SAVE_INTERVAL_PROPERTY = "portfolio.prices.warmSaveIntervalMs";
+    private static final long WARM_MAX_AGE_MS = Long.getLong(WARM_MAX_AGE_PROPERTY, 24 * 60 * 60 * 1000L);
+    private static final PriceCacheStore warmPrices =
+            new PriceCacheStore(new File("portfolio_data", "prices.cache"));
+    // Names of the live providers' caches, the only ones worth saving
+    private static final Set<String> liveCaches = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService warmSaver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "price-cache-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Daily closes downloaded so far, kept next to the user data
+    private static final HistoricalPriceStore historyStore =
+            new HistoricalPriceStore(new File("portfolio_data", "history"));
 
-    // Mock data for demo
-    private static final Map<String, Double> MOCK_STOCK_PRICES = new HashMap<>();
-    private static final Map<String, Double> MOCK_CRYPTO_PRICES = new HashMap<>();
+    // Shared by all instances: one connection pool, at most 4 requests in flight per provider
+    private static final HttpFetcher http = new HttpFetcher(4, Duration.ofSeconds(5), Duration.ofSeconds(5));
+    private static final PriceProvider mockProvider = new MockPriceProvider();
+    private static volatile PriceProvider defaultProvider;
+    // Created once: its rate limits only hold if every instance goes through it
+    private static PriceProvider liveProvider;
 
     static {
-        // Mock stock prices
-        MOCK_STOCK_PRICES.put("AAPL", 178.50);
-        MOCK_STOCK_PRICES.put("MSFT", 374.25);
-        MOCK_STOCK_PRICES.put("GOOGL", 141.80);
-        MOCK_STOCK_PRICES.put("TSLA", 248.90);
-        MOCK_STOCK_PRICES.put("AMZN", 178.25);
-        MOCK_STOCK_PRICES.put("NVDA", 495.50);
-        MOCK_STOCK_PRICES.put("META", 505.75);
-        MOCK_STOCK_PRICES.put("JPM", 195.30);
-        MOCK_STOCK_PRICES.put("V", 275.40);
-        MOCK_STOCK_PRICES.put("SPY", 478.20);
-        MOCK_STOCK_PRICES.put("QQQ", 405.60);
-
-        // Mock crypto prices
-        MOCK_CRYPTO_PRICES.put("BTC", 43250.00);
-        MOCK_CRYPTO_PRICES.put("ETH", 2280.50);
-        MOCK_CRYPTO_PRICES.put("BNB", 312.75);
-        MOCK_CRYPTO_PRICES.put("XRP", 0.62);
-        MOCK_CRYPTO_PRICES.put("SOL", 98.40);
-        MOCK_CRYPTO_PRICES.put("ADA", 0.58);
-        MOCK_CRYPTO_PRICES.put("DOGE", 0.082);
-    }
-
-    private boolean useMockData = true;
+        long hardTtl = Long.getLong(HARD_TTL_PROPERTY, CACHE_DURATION_MS);
+        long softTtl = Long.getLong(SOFT_TTL_PROPERTY, Math.min(hardTtl, CACHE_DURATION_MS));
+        try {
+            setRefreshAhead(softTtl, hardTtl);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring price cache TTLs: " + e.getMessage());
+        }
+
+        PriceProvider configured;
+        try {
+            configured = PriceProvider.fromSystemProperty(http);
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring price provider setting: " + e.getMessage());
+            configured = mockProvider;
+        }
+        defaultProvider = configured;
+
+        warmPrices.load();
+        long saveInterval = Long.getLong(WARM_SAVE_INTERVAL_PROPERTY, 5 * 60 * 1000L);
+        if (saveInterval > 0) {
+            warmSaver.scheduleWithFixedDelay(ApiService::saveWarmPrices, saveInterval, saveInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private volatile PriceProvider provider;
+    private volatile RequestPriority priority = RequestPriority.NORMAL;
 
+    /**
+     * Uses the default provider, the mock one unless configured otherwise.
+     */
     public ApiService() {
+        this(defaultProvider);
+    }
+
+    public ApiService(PriceProvider provider) {
+        this.provider = provider;
     }
 
+    /**
+     * Mock data, or real prices from Alpha Vantage and CoinGecko.
+     */
     public void setUseMockData(boolean useMock) {
-        this.useMockData = useMock;
+        this.provider = useMock ? mockProvider : getLiveProvider();
+    }
+
+    public void setProvider(PriceProvider provider) {
+        this.provider = provider;
+    }
+
+    public PriceProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Priority of this instance's requests when the provider limits its call rate: the
+     * screens showing prices use INTERACTIVE, monitoring BACKGROUND.
+     */
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Provider of the ApiService instances created from now on, e.g. a ReplayPriceProvider
+     * to drive the pricing and monitoring services from a recording.
+     */
+    public static void setDefaultProvider(PriceProvider provider) {
+        defaultProvider = provider;
+    }
+
+    public static PriceProvider getDefaultProvider() {
+        return defaultProvider;
+    }
+
+    /**
+     * Alpha Vantage and CoinGecko, rate limited. Always the same instance.
+     */
+    public static synchronized PriceProvider getLiveProvider() {
+        if (liveProvider == null) {
+            PriceProvider configured = defaultProvider;
+            liveProvider = configured != null && "live".equals(configured.getName())
+                    ? configured : PriceProvider.forName("live", http);
+        }
+        return liveProvider;
     }
 
     public static void setAlphaVantageApiKey(String key) {
-        alphaVantageKey = key;
+        AlphaVantagePriceProvider.setApiKey(key);
+    }
+
+    /**
+     * Base URL of Alpha Vantage (scheme, host and port), null restores the default.
+     */
+    public static void setAlphaVantageBaseUrl(String baseUrl) {
+        AlphaVantagePriceProvider.setBaseUrl(baseUrl);
+    }
+
+    /**
+     * Base URL of CoinGecko (scheme, host and port), null restores the default.
+     */
+    public static void setCoinGeckoBaseUrl(String baseUrl) {
+        CoinGeckoPriceProvider.setBaseUrl(baseUrl);
     }
 
     /**
      * Get current price for any symbol (stock or crypto)
      */
     public double getCurrentPrice(String symbol) {
-        symbol = symbol.toUpperCase();
+        return getCurrentPriceAsync(symbol).join();
+    }
 
-        // Check cache first
-        if (isCacheValid(symbol)) {
-            return priceCache.get(symbol);
-        }
+    /**
+     * Get current prices of several symbols at once, keyed by upper case symbol.
+     * Blocks until the provider answered; UI and scheduler threads use getCurrentPricesAsync.
+     */
+    public Map<String, Double> getCurrentPrices(Collection<String> symbols) {
+        return getCurrentPricesAsync(symbols).join();
+    }
 
-        double price;
-        if (useMockData) {
-            price = getMockPrice(symbol);
-        } else {
-            // Try stock API first, then crypto
-            price = fetchStockPrice(symbol);
-            if (price <= 0) {
-                price = fetchCryptoPrice(symbol);
-            }
+    public CompletableFuture<Double> getCurrentPriceAsync(String symbol) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        return getCurrentPricesAsync(List.of(key)).thenApply(prices -> prices.get(key));
+    }
+
+    /**
+     * Prices several symbols without blocking the caller, keyed by upper case symbol.
+     * The symbols missing from the cache are asked to the provider in a single call.
+     * A symbol the provider does not know is priced -1. The future never fails.
+     */
+    public CompletableFuture<Map<String, Double>> getCurrentPricesAsync(Collection<String> symbols) {
+        List<String> keys = new ArrayList<>();
+        for (String symbol : symbols) {
+            keys.add(symbol.toUpperCase(Locale.ROOT));
         }
+        PriceProvider current = provider;
+        RequestPriority currentPriority = priority;
+        current.prioritize(keys, currentPriority);
+        return cacheOf(current).getAll(keys, missing -> loadPrices(current, missing, currentPriority)).thenApply(prices -> {
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (String key : keys) {
+                result.put(key, prices.getOrDefault(key, -1.0));
+            }
+            return result;
+        });
+    }
 
-        // Cache the result
-        priceCache.put(symbol, price);
-        cacheTimestamps.put(symbol, System.currentTimeMillis());
+    /**
+     * Quotes of several symbols, keyed by upper case symbol. In refresh-ahead mode a quote may
+     * be the last known price, flagged stale with its age, while a fresh one is fetched.
+     */
+    public Map<String, PriceQuote> getQuotes(Collection<String> symbols) {
+        return getQuotesAsync(symbols).join();
+    }
 
-        return price;
+    public CompletableFuture<Map<String, PriceQuote>> getQuotesAsync(Collection<String> symbols) {
+        List<String> keys = new ArrayList<>();
+        for (String symbol : symbols) {
+            keys.add(symbol.toUpperCase(Locale.ROOT));
+        }
+        PriceProvider current = provider;
+        RequestPriority currentPriority = priority;
+        current.prioritize(keys, currentPriority);
+        return cacheOf(current).getQuotes(keys, missing -> loadPrices(current, missing, currentPriority)).thenApply(quotes -> {
+            Map<String, PriceQuote> result = new LinkedHashMap<>();
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                PriceQuote quote = quotes.get(key);
+                result.put(key, quote != null ? quote : new PriceQuote(key, -1, now, false));
+            }
+            return result;
+        });
     }
 
     /**
-     * Get mock price with small random variation
+     * Completes once the stale quotes of these symbols have been refreshed, so that a screen
+     * showing them can ask again and get the fresh prices.
      */
-    private double getMockPrice(String symbol) {
-        Random rand = new Random();
-        double variation = 0.98 + (rand.nextDouble() * 0.04); // ±2% variation
+    public CompletableFuture<Void> whenRefreshed(Collection<String> symbols) {
+        List<String> keys = new ArrayList<>();
+        for (String symbol : symbols) {
+            keys.add(symbol.toUpperCase(Locale.ROOT));
+        }
+        return cacheOf(provider).whenLoaded(keys);
+    }
 
-        if (MOCK_STOCK_PRICES.containsKey(symbol)) {
-            return MOCK_STOCK_PRICES.get(symbol) * variation;
-        } else if (MOCK_CRYPTO_PRICES.containsKey(symbol)) {
-            return MOCK_CRYPTO_PRICES.get(symbol) * variation;
+    /**
+     * Refresh-ahead: prices are fresh for softTtlMs, then returned stale while refreshed in
+     * the background until hardTtlMs, when callers wait for the new price again.
+     */
+    public static void setRefreshAhead(long softTtlMs, long hardTtlMs) {
+        if (softTtlMs > hardTtlMs) {
+            throw new IllegalArgumentException("Soft TTL " + softTtlMs + " is longer than hard TTL " + hardTtlMs);
         }
+        ApiService.softTtlMs = softTtlMs;
+        ApiService.hardTtlMs = hardTtlMs;
+        for (PriceCache cache : priceCaches.values()) {
+            cache.setDefaultTtl(softTtlMs, hardTtlMs);
+        }
+    }
 
-        // Unknown symbol - return random value
-        return 50 + rand.nextDouble() * 100;
+    /**
+     * Back to plain expiry after the default cache duration.
+     */
+    public static void disableRefreshAhead() {
+        setRefreshAhead(CACHE_DURATION_MS, CACHE_DURATION_MS);
     }
 
-    private double fetchStockPrice(String symbol) {
-        try {
-            String urlStr = String.format(
-                    "https://www.alphavantage.co/query?function=GLOBAL_QUOTE&symbol=%s&apikey=%s",
-                    symbol, alphaVantageKey);
-
-            String response = httpGet(urlStr);
-            if (response != null && response.contains("05. price")) {
-                int start = response.indexOf("05. price") + 14;
-                int end = response.indexOf("\"", start);
-                return Double.parseDouble(response.substring(start, end));
+    public static boolean isRefreshAhead() {
+        return softTtlMs < hardTtlMs;
+    }
+
+    /**
+     * Price cache of the default provider.
+     */
+    public static PriceCache getPriceCache() {
+        return cacheOf(defaultProvider);
+    }
+
+    public PriceCache getCache() {
+        return cacheOf(provider);
+    }
+
+    private static PriceCache cacheOf(PriceProvider provider) {
+        return priceCaches.computeIfAbsent(provider.getName(), name -> {
+            PriceCache cache = new PriceCache(CACHE_MAX_SYMBOLS, hardTtlMs);
+            cache.setDefaultTtl(softTtlMs, hardTtlMs);
+            // Mock and replayed prices mean nothing to the next run
+            if (provider.isLive()) {
+                liveCaches.add(name);
+                cache.setRestoredTtl(WARM_MAX_AGE_MS);
+                warmPrices.restoreInto(name, cache);
             }
-        } catch (Exception e) {
-            System.err.println("Error fetching stock price: " + e.getMessage());
-        }
-        return -1;
+            return cache;
+        });
     }
-    private double fetchCryptoPrice(String symbol) {
-        try {
-            String coinId = mapToCoinGeckoId(symbol);
-            String urlStr = String.format(
-                    "https://api.coingecko.com/api/v3/simple/price?ids=%s&vs_currencies=usd",
-                    coinId);
-
-            String response = httpGet(urlStr);
-            if (response != null && response.contains("usd")) {
-                int start = response.indexOf("usd") + 5;
-                int end = response.indexOf("}", start);
-                if (end == -1)
-                    end = response.length();
-                String priceStr = response.substring(start, end).replaceAll("[^0-9.]", "");
-                return Double.parseDouble(priceStr);
+
+    /**
+     * Saves the last known live prices, which the next start serves (flagged stale) until
+     * fresh ones arrive. Runs periodically; call it once more on shutdown.
+     */
+    public static void saveWarmPrices() {
+        Map<String, PriceCache> caches = new HashMap<>();
+        for (String name : liveCaches) {
+            PriceCache cache = priceCaches.get(name);
+            if (cache != null) {
+                caches.put(name, cache);
             }
-        } catch (Exception e) {
-            System.err.println("Error fetching crypto price: " + e.getMessage());
         }
-        return -1;
-    }
-
-    private String mapToCoinGeckoId(String symbol) {
-        switch (symbol.toUpperCase()) {
-            case "BTC":
-                return "bitcoin";
-            case "ETH":
-                return "ethereum";
-            case "BNB":
-                return "binancecoin";
-            case "XRP":
-                return "ripple";
-            case "SOL":
-                return "solana";
-            case "ADA":
-                return "cardano";
-            case "DOGE":
-                return "dogecoin";
-            default:
-                return symbol.toLowerCase();
+        if (!caches.isEmpty()) {
+            warmPrices.save(caches, WARM_MAX_AGE_MS);
         }
     }
 
-    private String httpGet(String urlStr) {
+    /**
+     * Stops the periodic saves and saves the prices one last time.
+     */
+    public static void shutdown() {
+        warmSaver.shutdown();
+        saveWarmPrices();
+    }
+
+    /**
+     * Prices of symbols missing from the cache. Every symbol gets a price (-1 when unknown), so
+     * failures of symbols never priced are cached too and not retried before the TTL expires;
+     * the cache keeps the last known price of the others.
+     */
+    private static CompletableFuture<Map<String, Double>> loadPrices(PriceProvider provider, Set<String> missing,
+                                                                     RequestPriority priority) {
+        CompletableFuture<Map<String, Double>> fetched;
         try {
-            URL url = new URL(urlStr);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-
-            if (conn.getResponseCode() == 200) {
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(conn.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
-                return response.toString();
-            }
-        } catch (Exception e) {
-            System.err.println("HTTP error: " + e.getMessage());
+            fetched = provider.getPrices(missing, priority);
+        } catch (RuntimeException e) {
+            fetched = CompletableFuture.failedFuture(e);
         }
-        return null;
+        return fetched.handle((found, error) -> {
+            if (error != null) {
+                System.err.println("Error fetching prices from " + provider.getName() + ": " + error.getMessage());
+            }
+            Map<String, Double> prices = new HashMap<>();
+            for (String symbol : missing) {
+                Double price = found != null ? found.get(symbol) : null;
+                prices.put(symbol, price != null && !price.isNaN() ? price : -1.0);
+            }
+            return prices;
+        });
     }
 
-    private boolean isCacheValid(String symbol) {
-        if (!priceCache.containsKey(symbol))
-            return false;
-        Long timestamp = cacheTimestamps.get(symbol);
-        if (timestamp == null)
-            return false;
-        return (System.currentTimeMillis() - timestamp) < CACHE_DURATION_MS;
-    }
+    /**
+     * Daily closes of the last days days, oldest first, keyed by ISO date.
+     */
     public Map<String, Double> getHistoricalPrices(String symbol, int days) {
-        Map<String, Double> history = new HashMap<>();
-        double basePrice = getCurrentPrice(symbol);
-        Random rand = new Random();
-
-        java.time.LocalDate date = java.time.LocalDate.now();
-        for (int i = 0; i < days; i++) {
-            // Add some randomness to simulate historical prices
-            double variation = 0.95 + (rand.nextDouble() * 0.10);
-            history.put(date.minusDays(i).toString(), basePrice * variation);
+        LocalDate today = LocalDate.now();
+        return getHistory(symbol, today.minusDays(days - 1), today).join().toMap();
+    }
+
+    /**
+     * Daily closes between from and to, both inclusive. Prices of live providers go through
+     * the local history store, which only asks the provider for the days it does not have yet.
+     * The future never fails; days nobody could provide are simply missing.
+     */
+    public CompletableFuture<PriceSeries> getHistory(String symbol, LocalDate from, LocalDate to) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        PriceProvider current = provider;
+        if (current.isLive()) {
+            return historyStore.get(key, from, to, current::getDailySeries);
         }
+        return current.getDailySeries(key, from, to).exceptionally(error -> PriceSeries.empty(key));
+    }
 
-        return history;
+    public static HistoricalPriceStore getHistoryStore() {
+        return historyStore;
     }
-}
\ No newline at end of file
+}
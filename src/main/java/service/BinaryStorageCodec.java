@@ -0,0 +1,428 @@
+package service;
+
+import model.Asset;
+import model.AssetType;
+import model.Currency;
+import model.Event;
+import model.EventType;
+import model.Portfolio;
+import model.PortfolioSnapshot;
+import model.SavingsAccount;
+import model.TrackedList;
+import model.Transaction;
+import model.User;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary shards.
+ *
+ * - symbols, types, currencies and other repeated strings are dictionary encoded: the first
+ *   occurrence is written inline and later ones as a varint reference
+ * - timestamps and dates are zigzag varint deltas against the previous one in the same list
+ * - doubles are written raw (8 bytes), counts and lengths as varints
+ *
+ * The streams handed in are expected to be buffered by the caller.
+ */
+public class BinaryStorageCodec implements StorageCodec {
+
+    private static final int MAGIC = 0x50464231; // "PFB1"
+    private static final int VERSION = 1;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public String getExtension() {
+        return ".bin";
+    }
+
+    @Override
+    public void write(UserStore.ShardData data, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(out);
+        encoder.out.writeInt(MAGIC);
+        encoder.out.writeByte(VERSION);
+        encoder.writeVarLong(data.getJournalSequence());
+        encoder.writeUser(data.getUser());
+        encoder.out.flush();
+    }
+
+    @Override
+    public UserStore.ShardData read(InputStream in) throws IOException {
+        Decoder decoder = new Decoder(in);
+        if (decoder.in.readInt() != MAGIC) {
+            throw new IOException("not a binary portfolio shard");
+        }
+        int version = decoder.in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported binary shard version " + version);
+        }
+        long journalSequence = decoder.readVarLong();
+        return new UserStore.ShardData(decoder.readUser(), journalSequence);
+    }
+
+    private static class Encoder {
+        final DataOutputStream out;
+        final Map<String, Integer> dictionary = new HashMap<>();
+        long lastEpochSecond;
+        long lastEpochDay;
+
+        Encoder(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        void writeUser(User user) throws IOException {
+            writeString(user.getName());
+            writeString(user.getEmail());
+            writeString(user.getPassword());
+            writeSymbol(enumName(user.getPreferredCurrency()));
+
+            writeCount(user.getPortfolios());
+            for (Portfolio portfolio : user.getPortfolios()) {
+                writePortfolio(portfolio);
+            }
+            writeCount(user.getSavingsAccounts());
+            for (SavingsAccount account : user.getSavingsAccounts()) {
+                writeString(account.getName());
+                out.writeDouble(account.getBalance());
+                out.writeDouble(account.getInterestRate());
+                writeTransactions(account.getTransactions());
+            }
+            writeEvents(user.getGlobalEvents());
+        }
+
+        void writePortfolio(Portfolio portfolio) throws IOException {
+            writeString(portfolio.getId());
+            writeString(portfolio.getName());
+            writeString(portfolio.getDescription());
+            writeSymbol(enumName(portfolio.getReferenceCurrency()));
+
+            writeCount(portfolio.getAssets());
+            for (Asset asset : portfolio.getAssets()) {
+                writeSymbol(asset.getSymbol());
+                writeSymbol(asset.getName());
+                writeSymbol(enumName(asset.getType()));
+                out.writeDouble(asset.getQuantity());
+                out.writeDouble(asset.getAvgPurchasePrice());
+                out.writeDouble(asset.getCurrentPrice());
+            }
+            writeTransactions(portfolio.getTransactionHistory());
+            writeEvents(portfolio.getEvents());
+
+            writeCount(portfolio.getSnapshots());
+            lastEpochDay = 0;
+            for (PortfolioSnapshot snapshot : portfolio.getSnapshots()) {
+                writeDate(snapshot.getDate());
+                out.writeDouble(snapshot.getTotalValue());
+                writeSymbol(snapshot.getPortfolioId());
+            }
+        }
+
+        void writeTransactions(List<Transaction> transactions) throws IOException {
+            writeCount(transactions);
+            lastEpochSecond = 0;
+            for (Transaction tx : transactions) {
+                writeSymbol(tx.getAssetSymbol());
+                writeSymbol(tx.getType());
+                out.writeDouble(tx.getQuantity());
+                out.writeDouble(tx.getPrice());
+                out.writeDouble(tx.getFees());
+                out.writeDouble(tx.getTotal());
+                writeSymbol(tx.getCurrency());
+                writeString(tx.getNotes());
+                writeTimestamp(tx.getTimestamp());
+            }
+        }
+
+        void writeEvents(List<Event> events) throws IOException {
+            writeCount(events);
+            lastEpochDay = 0;
+            for (Event event : events) {
+                writeString(event.getId());
+                writeString(event.getTitle());
+                writeString(event.getDescription());
+                writeDate(event.getDate());
+                writeSymbol(enumName(event.getType()));
+                writeSymbol(event.getPortfolioId());
+            }
+        }
+
+        void writeCount(List<?> list) throws IOException {
+            writeVarLong(list == null ? 0 : list.size());
+        }
+
+        /**
+         * 0 = null, otherwise second precision delta to the previous timestamp (+1 flag bit).
+         */
+        void writeTimestamp(LocalDateTime timestamp) throws IOException {
+            if (timestamp == null) {
+                writeVarLong(0);
+                return;
+            }
+            long epochSecond = timestamp.toEpochSecond(ZoneOffset.UTC);
+            writeVarLong((zigzag(epochSecond - lastEpochSecond) << 1) | 1);
+            lastEpochSecond = epochSecond;
+        }
+
+        void writeDate(LocalDate date) throws IOException {
+            if (date == null) {
+                writeVarLong(0);
+                return;
+            }
+            long epochDay = date.toEpochDay();
+            writeVarLong((zigzag(epochDay - lastEpochDay) << 1) | 1);
+            lastEpochDay = epochDay;
+        }
+
+        /**
+         * 0 = null, 1 = new dictionary entry followed by its text, n + 2 = reference to entry n.
+         */
+        void writeSymbol(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            Integer id = dictionary.get(value);
+            if (id != null) {
+                writeVarLong(id + 2L);
+                return;
+            }
+            dictionary.put(value, dictionary.size());
+            writeVarLong(1);
+            writeBytes(value);
+        }
+
+        /**
+         * 0 = null, otherwise UTF-8 length + 1 followed by the bytes.
+         */
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            out.write(bytes);
+        }
+
+        void writeBytes(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        static String enumName(Enum<?> value) {
+            return value == null ? null : value.name();
+        }
+    }
+
+    private static class Decoder {
+        final DataInputStream in;
+        final List<String> dictionary = new ArrayList<>();
+        long lastEpochSecond;
+        long lastEpochDay;
+
+        Decoder(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        User readUser() throws IOException {
+            User user = new User(readString(), readString(), readString());
+            user.setPreferredCurrency(readEnum(Currency.class));
+
+            int portfolios = readCount();
+            for (int i = 0; i < portfolios; i++) {
+                user.getPortfolios().add(readPortfolio());
+            }
+            int accounts = readCount();
+            for (int i = 0; i < accounts; i++) {
+                SavingsAccount account = new SavingsAccount(readString(), in.readDouble(), in.readDouble());
+                account.setTransactions(readTransactions());
+                user.getSavingsAccounts().add(account);
+            }
+            user.setGlobalEvents(readEvents());
+            return user;
+        }
+
+        Portfolio readPortfolio() throws IOException {
+            Portfolio portfolio = new Portfolio();
+            portfolio.setId(readString());
+            portfolio.setName(readString());
+            portfolio.setDescription(readString());
+            portfolio.setReferenceCurrency(readEnum(Currency.class));
+
+            int assets = readCount();
+            List<Asset> assetList = new TrackedList<>(assets);
+            for (int i = 0; i < assets; i++) {
+                Asset asset = new Asset(readSymbol(), readSymbol(), readEnum(AssetType.class),
+                        in.readDouble(), in.readDouble());
+                asset.setCurrentPrice(in.readDouble());
+                assetList.add(asset);
+            }
+            portfolio.setAssets(assetList);
+            portfolio.setTransactionHistory(readTransactions());
+            portfolio.setEvents(readEvents());
+
+            int snapshots = readCount();
+            List<PortfolioSnapshot> snapshotList = new TrackedList<>(snapshots);
+            lastEpochDay = 0;
+            for (int i = 0; i < snapshots; i++) {
+                snapshotList.add(new PortfolioSnapshot(readDate(), in.readDouble(), readSymbol()));
+            }
+            portfolio.setSnapshots(snapshotList);
+            return portfolio;
+        }
+
+        List<Transaction> readTransactions() throws IOException {
+            int count = readCount();
+            List<Transaction> transactions = new TrackedList<>(count);
+            lastEpochSecond = 0;
+            for (int i = 0; i < count; i++) {
+                Transaction tx = new Transaction();
+                tx.setAssetSymbol(readSymbol());
+                tx.setType(readSymbol());
+                tx.setQuantity(in.readDouble());
+                tx.setPrice(in.readDouble());
+                tx.setFees(in.readDouble());
+                tx.setTotal(in.readDouble());
+                tx.setCurrency(readSymbol());
+                tx.setNotes(readString());
+                tx.setTimestamp(readTimestamp());
+                transactions.add(tx);
+            }
+            return transactions;
+        }
+
+        List<Event> readEvents() throws IOException {
+            int count = readCount();
+            List<Event> events = new TrackedList<>(count);
+            lastEpochDay = 0;
+            for (int i = 0; i < count; i++) {
+                Event event = new Event();
+                event.setId(readString());
+                event.setTitle(readString());
+                event.setDescription(readString());
+                event.setDate(readDate());
+                event.setType(readEnum(EventType.class));
+                event.setPortfolioId(readSymbol());
+                events.add(event);
+            }
+            return events;
+        }
+
+        int readCount() throws IOException {
+            long count = readVarLong();
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new IOException("corrupt binary shard: bad count " + count);
+            }
+            return (int) count;
+        }
+
+        LocalDateTime readTimestamp() throws IOException {
+            long value = readVarLong();
+            if (value == 0) {
+                return null;
+            }
+            lastEpochSecond += unzigzag(value >>> 1);
+            return LocalDateTime.ofEpochSecond(lastEpochSecond, 0, ZoneOffset.UTC);
+        }
+
+        LocalDate readDate() throws IOException {
+            long value = readVarLong();
+            if (value == 0) {
+                return null;
+            }
+            lastEpochDay += unzigzag(value >>> 1);
+            return LocalDate.ofEpochDay(lastEpochDay);
+        }
+
+        String readSymbol() throws IOException {
+            long value = readVarLong();
+            if (value == 0) {
+                return null;
+            }
+            if (value == 1) {
+                String text = readBytes((int) readVarLong());
+                dictionary.add(text);
+                return text;
+            }
+            long id = value - 2;
+            if (id >= dictionary.size()) {
+                throw new IOException("corrupt binary shard: unknown dictionary entry " + id);
+            }
+            return dictionary.get((int) id);
+        }
+
+        <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+            String name = readSymbol();
+            if (name == null) {
+                return null;
+            }
+            try {
+                return Enum.valueOf(type, name);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            return readBytes((int) (length - 1));
+        }
+
+        String readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+                if (shift > 63) {
+                    throw new IOException("corrupt binary shard: varint too long");
+                }
+            }
+        }
+
+        static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
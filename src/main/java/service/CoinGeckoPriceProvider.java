@@ -0,0 +1,197 @@
+package service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Crypto prices from CoinGecko, any number of coins in a single request. Responses are
+ * parsed as they arrive with a streaming parser, in a single pass.
+ */
+public class CoinGeckoPriceProvider implements PriceProvider {
+
+    private static final String DEFAULT_BASE_URL = "https://api.coingecko.com";
+    private static volatile String baseUrl = DEFAULT_BASE_URL;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final HttpFetcher http;
+
+    public CoinGeckoPriceProvider(HttpFetcher http) {
+        this.http = http;
+    }
+
+    /**
+     * Scheme, host and port of the API, null restores the default.
+     */
+    public static void setBaseUrl(String url) {
+        baseUrl = url != null ? url : DEFAULT_BASE_URL;
+    }
+
+    @Override
+    public String getName() {
+        return "coingecko";
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    /**
+     * simple/price takes a comma separated id list and answers
+     * {"bitcoin":{"usd":43250.0},"ethereum":{"usd":2280.5}}.
+     */
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols) {
+        if (symbols.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        Map<String, String> symbolsById = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            symbolsById.put(mapToCoinGeckoId(symbol), symbol);
+        }
+        StringBuilder ids = new StringBuilder();
+        for (String id : symbolsById.keySet()) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(HttpFetcher.encode(id));
+        }
+        String urlStr = String.format(
+                "%s/api/v3/simple/price?ids=%s&vs_currencies=usd",
+                baseUrl, ids);
+
+        return http.get(urlStr, body -> parseSimplePrices(symbolsById, body)).handle((prices, error) -> {
+            if (error instanceof RateLimitException || error != null && error.getCause() instanceof RateLimitException) {
+                // Left to the caller, which may retry later
+                throw new CompletionException(error);
+            }
+            if (error != null) {
+                System.err.println("Error fetching crypto price: " + error.getMessage());
+                return new HashMap<>();
+            }
+            return prices;
+        });
+    }
+
+    /**
+     * Prices keyed by symbol in one pass over the response; coins not asked for are skipped.
+     */
+    static Map<String, Double> parseSimplePrices(Map<String, String> symbolsById, InputStream body)
+            throws IOException {
+        Map<String, Double> prices = new HashMap<>();
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return prices;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String symbol = symbolsById.get(parser.getCurrentName());
+                if (parser.nextToken() != JsonToken.START_OBJECT || symbol == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String currency = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("usd".equals(currency) && value.isNumeric()) {
+                        prices.put(symbol, parser.getDoubleValue());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * market_chart/range. Short ranges come hourly, the last price of each UTC day is kept
+     * as its close.
+     */
+    @Override
+    public CompletableFuture<PriceSeries> getDailySeries(String symbol, LocalDate from, LocalDate to) {
+        long fromSeconds = from.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        long toSeconds = to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond() - 1;
+        String urlStr = String.format(
+                "%s/api/v3/coins/%s/market_chart/range?vs_currency=usd&from=%d&to=%d",
+                baseUrl, HttpFetcher.encode(mapToCoinGeckoId(symbol)), fromSeconds, toSeconds);
+
+        return http.get(urlStr, body -> parseMarketChart(symbol, from, to, body));
+    }
+
+    /**
+     * {"prices": [[timestampMs, price], ...], "market_caps": [...], "total_volumes": [...]}
+     * in time order, read straight into the series columns.
+     */
+    static PriceSeries parseMarketChart(String symbol, LocalDate from, LocalDate to, InputStream body)
+            throws IOException {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        int[] days = new int[128];
+        double[] closes = new double[128];
+        int count = 0;
+        boolean found = false;
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected market chart for " + symbol);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !"prices".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                found = true;
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    JsonToken time = parser.nextToken();
+                    long timestamp = time.isNumeric() ? parser.getLongValue() : -1;
+                    JsonToken price = time == JsonToken.END_ARRAY ? time : parser.nextToken();
+                    double close = price.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+                    while (price != JsonToken.END_ARRAY && (price = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                    }
+                    long day = Math.floorDiv(timestamp, 86_400_000L);
+                    if (timestamp < 0 || Double.isNaN(close) || day < first || day > last) {
+                        continue;
+                    }
+                    if (count > 0 && days[count - 1] == day) {
+                        closes[count - 1] = close;
+                        continue;
+                    }
+                    if (count == days.length) {
+                        days = Arrays.copyOf(days, count * 2);
+                        closes = Arrays.copyOf(closes, count * 2);
+                    }
+                    days[count] = (int) day;
+                    closes[count++] = close;
+                }
+            }
+        }
+        if (!found) {
+            throw new IOException("No market chart for " + symbol);
+        }
+        return PriceSeries.ofColumns(symbol, days, closes, count);
+    }
+
+    // Ids of the coins in the symbol registry, other symbols are tried lower cased
+    static String mapToCoinGeckoId(String symbol) {
+        SymbolRegistry.Entry entry = SymbolRegistry.getInstance().get(symbol);
+        if (entry != null && SymbolRegistry.COINGECKO.equals(entry.getProvider())) {
+            return entry.getProviderId();
+        }
+        return symbol.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,196 @@
+package service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import model.Asset;
+import model.Event;
+import model.Portfolio;
+import model.PortfolioSnapshot;
+import model.SavingsAccount;
+import model.Transaction;
+import util.XORCoder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only journal of domain mutations.
+ * Each record is a 4 byte length followed by the (optionally XOR coded) JSON of an Entry,
+ * so a single change costs one small append instead of a rewrite of the whole data file.
+ * The journal is emptied every time UserService compacts it into the base data file.
+ */
+public class DataJournal {
+
+    public enum Operation {
+        ASSET_ADDED,
+        TRANSACTION_RECORDED,
+        EVENT_CREATED,
+        SNAPSHOT_TAKEN,
+        PORTFOLIO_ADDED,
+        PORTFOLIO_REMOVED,
+        ASSET_REMOVED,
+        ACCOUNT_ADDED,
+        ACCOUNT_REMOVED,
+        EVENT_REMOVED
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+        private long sequence;
+        private Operation operation;
+        private String email;
+        private String portfolioId;
+        private String accountName;
+        private Double balance;
+        private Asset asset;
+        private Transaction transaction;
+        private Event event;
+        private PortfolioSnapshot snapshot;
+        private Portfolio portfolio;
+        private SavingsAccount account;
+
+        public Entry() {
+        }
+
+        public Entry(Operation operation, String email) {
+            this.operation = operation;
+            this.email = email;
+        }
+
+        public long getSequence() { return sequence; }
+        public void setSequence(long sequence) { this.sequence = sequence; }
+
+        public Operation getOperation() { return operation; }
+        public void setOperation(Operation operation) { this.operation = operation; }
+
+        public String getEmail() { return email; }
+        public void setEmail(String email) { this.email = email; }
+
+        public String getPortfolioId() { return portfolioId; }
+        public void setPortfolioId(String portfolioId) { this.portfolioId = portfolioId; }
+
+        public String getAccountName() { return accountName; }
+        public void setAccountName(String accountName) { this.accountName = accountName; }
+
+        public Double getBalance() { return balance; }
+        public void setBalance(Double balance) { this.balance = balance; }
+
+        public Asset getAsset() { return asset; }
+        public void setAsset(Asset asset) { this.asset = asset; }
+
+        public Transaction getTransaction() { return transaction; }
+        public void setTransaction(Transaction transaction) { this.transaction = transaction; }
+
+        public Event getEvent() { return event; }
+        public void setEvent(Event event) { this.event = event; }
+
+        public PortfolioSnapshot getSnapshot() { return snapshot; }
+        public void setSnapshot(PortfolioSnapshot snapshot) { this.snapshot = snapshot; }
+
+        public Portfolio getPortfolio() { return portfolio; }
+        public void setPortfolio(Portfolio portfolio) { this.portfolio = portfolio; }
+
+        public SavingsAccount getAccount() { return account; }
+        public void setAccount(SavingsAccount account) { this.account = account; }
+    }
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter entryWriter;
+    private int entryCount;
+
+    public DataJournal(File file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.entryWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * Appends one entry. The key is null when encryption is disabled.
+     */
+    public void append(Entry entry, byte[] key) throws IOException {
+        appendEncoded(encode(entry, key));
+    }
+
+    /**
+     * Serializes an entry so it can be written later, e.g. from another thread.
+     */
+    public byte[] encode(Entry entry, byte[] key) throws IOException {
+        byte[] payload = entryWriter.writeValueAsBytes(entry);
+        if (key != null) {
+            XORCoder.codeDecodeInPlace(payload, key);
+        }
+        return payload;
+    }
+
+    public synchronized void appendEncoded(byte[] payload) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        entryCount++;
+    }
+
+    /**
+     * Reads every complete entry. A record cut short by a crash during append is ignored.
+     */
+    public synchronized List<Entry> readAll(byte[] key) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            entryCount = 0;
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                try {
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    System.err.println("Ignoring truncated journal record in " + file.getName());
+                    break;
+                }
+                if (key != null) {
+                    XORCoder.codeDecodeInPlace(payload, key);
+                }
+                entries.add(objectMapper.readValue(payload, Entry.class));
+            }
+        }
+        entryCount = entries.size();
+        return entries;
+    }
+
+    /**
+     * Empties the journal once its content is part of the base data file.
+     */
+    public synchronized void truncate() throws IOException {
+        new FileOutputStream(file, false).close();
+        entryCount = 0;
+    }
+
+    public synchronized int size() {
+        return entryCount;
+    }
+}
@@ -18,15 +18,19 @@ public class EventService {
 
     public void addGlobalEvent(User user, String title, String description, LocalDate date, EventType type) {
         Event event = new Event(title, description, date, type);
-        user.addGlobalEvent(event);
-        UserService.save();
+        UserService.modify(() -> {
+            user.addGlobalEvent(event);
+            UserService.recordEvent(event);
+        });
     }
 
     public void addPortfolioEvent(Portfolio portfolio, String title, String description, LocalDate date,
             EventType type) {
         Event event = new Event(title, description, date, type, portfolio.getId());
-        portfolio.getEvents().add(event);
-        UserService.save();
+        UserService.modify(() -> {
+            portfolio.getEvents().add(event);
+            UserService.recordEvent(event);
+        });
     }
 
     public List<Event> getAllEvents(User user) {
@@ -52,14 +56,16 @@ public class EventService {
         return events;
     }
     public void deleteEvent(User user, Event event) {
-        if (event.isGlobal()) {
-            user.getGlobalEvents().removeIf(e -> e.getId().equals(event.getId()));
-        } else {
-            for (Portfolio portfolio : user.getPortfolios()) {
-                portfolio.getEvents().removeIf(e -> e.getId().equals(event.getId()));
+        UserService.modify(() -> {
+            if (event.isGlobal()) {
+                user.getGlobalEvents().removeIf(e -> e.getId().equals(event.getId()));
+            } else {
+                for (Portfolio portfolio : user.getPortfolios()) {
+                    portfolio.getEvents().removeIf(e -> e.getId().equals(event.getId()));
+                }
             }
-        }
-        UserService.save();
+            UserService.recordEventRemoved(event);
+        });
     }
     public List<Event> getEventsByType(User user, EventType type) {
         return getAllEvents(user).stream()
@@ -0,0 +1,229 @@
+package service;
+
+import util.AtomicFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local store of daily closes, one file per symbol.
+ *
+ * Each symbol remembers the date range already downloaded, so a query only fetches the days
+ * before or after it from the provider, then merges them in and rewrites the file. Today is
+ * never marked as downloaded since its close can still move.
+ *
+ * File layout (through AtomicFiles): version, covered from, covered to (epoch days),
+ * point count, then the epoch day column and the close column.
+ */
+public class HistoricalPriceStore {
+
+    /**
+     * Downloads the daily closes of a symbol between two dates, both inclusive.
+     */
+    public interface Fetcher {
+        CompletableFuture<PriceSeries> fetch(String symbol, LocalDate from, LocalDate to);
+    }
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".hist";
+
+    private static class Entry {
+        final PriceSeries series;
+        // Epoch days already downloaded, coveredFrom > coveredTo when nothing is
+        final int coveredFrom;
+        final int coveredTo;
+
+        Entry(PriceSeries series, int coveredFrom, int coveredTo) {
+            this.series = series;
+            this.coveredFrom = coveredFrom;
+            this.coveredTo = coveredTo;
+        }
+
+        boolean isCovered() {
+            return coveredFrom <= coveredTo;
+        }
+    }
+
+    private final File directory;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Backfills of a symbol run one after the other, so the later ones find nothing missing
+    private final Map<String, CompletableFuture<?>> backfills = new ConcurrentHashMap<>();
+
+    public HistoricalPriceStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * What is stored for the symbol between from and to, without fetching anything.
+     */
+    public PriceSeries get(String symbol, LocalDate from, LocalDate to) {
+        return entryOf(symbol).series.range(from, to);
+    }
+
+    /**
+     * Closes between from and to, downloading the missing days first.
+     */
+    public CompletableFuture<PriceSeries> get(String symbol, LocalDate from, LocalDate to, Fetcher fetcher) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<?> previous = backfills.put(symbol, done);
+        CompletableFuture<?> start = previous != null ? previous : CompletableFuture.completedFuture(null);
+        start.handle((ignored, error) -> null)
+                .thenCompose(ignored -> backfill(symbol, from, to, fetcher))
+                .whenComplete((ignored, error) -> {
+                    backfills.remove(symbol, done);
+                    done.complete(null);
+                });
+        return done.thenApply(ignored -> get(symbol, from, to));
+    }
+
+    private CompletableFuture<Void> backfill(String symbol, LocalDate from, LocalDate to, Fetcher fetcher) {
+        Entry entry = entryOf(symbol);
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        int today = (int) LocalDate.now().toEpochDay();
+
+        List<int[]> missing = new ArrayList<>();
+        if (!entry.isCovered()) {
+            missing.add(new int[] { first, last });
+        } else {
+            // Fetching up to the covered range keeps it a single interval
+            if (first < entry.coveredFrom) {
+                missing.add(new int[] { first, entry.coveredFrom - 1 });
+            }
+            if (last > entry.coveredTo) {
+                missing.add(new int[] { entry.coveredTo + 1, last });
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<CompletableFuture<PriceSeries>> fetches = new ArrayList<>();
+        for (int[] range : missing) {
+            fetches.add(fetcher.fetch(symbol, LocalDate.ofEpochDay(range[0]), LocalDate.ofEpochDay(range[1])));
+        }
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            PriceSeries fetched = PriceSeries.empty(symbol);
+            List<int[]> downloaded = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                CompletableFuture<PriceSeries> fetch = fetches.get(i);
+                if (fetch.isCompletedExceptionally() || fetch.join() == null) {
+                    // Left missing, tried again next time
+                    continue;
+                }
+                fetched = fetched.merge(fetch.join());
+                int rangeTo = Math.min(missing.get(i)[1], today - 1);
+                if (missing.get(i)[0] <= rangeTo) {
+                    downloaded.add(new int[] { missing.get(i)[0], rangeTo });
+                }
+            }
+            update(symbol, fetched, downloaded);
+            return null;
+        });
+    }
+
+    /**
+     * Adds closes obtained elsewhere, without changing the downloaded range.
+     */
+    public void put(String symbol, PriceSeries points) {
+        update(symbol, points, List.of());
+    }
+
+    private synchronized void update(String symbol, PriceSeries points, List<int[]> downloaded) {
+        Entry current = entryOf(symbol);
+        int coveredFrom = current.coveredFrom;
+        int coveredTo = current.coveredTo;
+        for (int[] range : downloaded) {
+            if (coveredFrom > coveredTo) {
+                coveredFrom = range[0];
+                coveredTo = range[1];
+            } else if (range[1] >= coveredFrom - 1 && range[0] <= coveredTo + 1) {
+                coveredFrom = Math.min(coveredFrom, range[0]);
+                coveredTo = Math.max(coveredTo, range[1]);
+            }
+        }
+        PriceSeries series = current.series.merge(points);
+        if (series == current.series && coveredFrom == current.coveredFrom && coveredTo == current.coveredTo) {
+            return;
+        }
+        Entry updated = new Entry(series, coveredFrom, coveredTo);
+        entries.put(symbol, updated);
+        save(symbol, updated);
+    }
+
+    private Entry entryOf(String symbol) {
+        return entries.computeIfAbsent(symbol, this::load);
+    }
+
+    private Path fileOf(String symbol) {
+        // Symbols are tickers, but keep anything exotic out of the path
+        return new File(directory, symbol.replaceAll("[^A-Za-z0-9._-]", "_") + EXTENSION).toPath();
+    }
+
+    private Entry load(String symbol) {
+        try {
+            Entry entry = AtomicFiles.readWithFallback(fileOf(symbol), in -> {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+                int version = data.readInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Unsupported history format " + version);
+                }
+                int coveredFrom = data.readInt();
+                int coveredTo = data.readInt();
+                int count = data.readInt();
+                int[] days = new int[count];
+                double[] closes = new double[count];
+                for (int i = 0; i < count; i++) {
+                    days[i] = data.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    closes[i] = data.readDouble();
+                }
+                return new Entry(new PriceSeries(symbol, days, closes), coveredFrom, coveredTo);
+            });
+            if (entry != null) {
+                return entry;
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading price history of " + symbol + ": " + e.getMessage());
+        }
+        return new Entry(PriceSeries.empty(symbol), 0, -1);
+    }
+
+    private void save(String symbol, Entry entry) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            System.err.println("Cannot create " + directory);
+            return;
+        }
+        PriceSeries series = entry.series;
+        try {
+            AtomicFiles.write(fileOf(symbol), out -> {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(FORMAT_VERSION);
+                data.writeInt(entry.coveredFrom);
+                data.writeInt(entry.coveredTo);
+                data.writeInt(series.size());
+                for (int i = 0; i < series.size(); i++) {
+                    data.writeInt(series.getEpochDay(i));
+                }
+                for (int i = 0; i < series.size(); i++) {
+                    data.writeDouble(series.getClose(i));
+                }
+                data.flush();
+            });
+        } catch (IOException e) {
+            System.err.println("Error saving price history of " + symbol + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP GET for the market data providers.
+ *
+ * A single HttpClient is shared, so connections are pooled and HTTP/2 is used with servers
+ * that support it. Every request has a timeout and at most maxPerHost requests are in flight
+ * per host; the others are queued without holding a thread.
+ *
+ * Bodies are parsed on a small pool of the fetcher's own, as reading them blocks until the
+ * data arrives: on the common fork/join pool slow responses would hold up everything else
+ * running there, CSV imports included.
+ */
+public class HttpFetcher {
+
+    private static class HostQueue {
+        private final int limit;
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int active;
+
+        HostQueue(int limit) {
+            this.limit = limit;
+        }
+
+        void submit(Runnable request) {
+            synchronized (this) {
+                if (active >= limit) {
+                    waiting.add(request);
+                    return;
+                }
+                active++;
+            }
+            request.run();
+        }
+
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            next.run();
+        }
+    }
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxPerHost;
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final ExecutorService parsers;
+
+    public HttpFetcher(int maxPerHost, Duration connectTimeout, Duration requestTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.maxPerHost = maxPerHost;
+        // Sized on the per host limit, bodies of further hosts wait for a free thread
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(2, maxPerHost);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "http-parser-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.parsers = pool;
+    }
+
+    /**
+     * Reads a response body, called with the connection's stream as the body arrives.
+     */
+    public interface BodyParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    /**
+     * Body of a 200 response. Other status codes, timeouts and network errors complete
+     * the future exceptionally.
+     */
+    public CompletableFuture<String> get(String url) {
+        return get(url, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses the body of a 200 response straight from the connection, without buffering it
+     * whole. The parser runs on the fetcher's parsing pool; the request counts against the host limit until
+     * it returns. Its exceptions, other status codes, timeouts and network errors complete the
+     * future exceptionally, with a RateLimitException for 429 Too Many Requests.
+     */
+    public <T> CompletableFuture<T> get(String url, BodyParser<T> parser) {
+        URI uri;
+        HttpRequest request;
+        try {
+            uri = URI.create(url);
+            request = HttpRequest.newBuilder(uri)
+                    .timeout(requestTimeout)
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            // Malformed URL: fails this request only, like any other request error
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        HostQueue host = hosts.computeIfAbsent(uri.getHost() + ":" + uri.getPort(), h -> new HostQueue(maxPerHost));
+        host.submit(() -> send(request, parser, host, result));
+        return result;
+    }
+
+    /**
+     * Value encoded for a query parameter or a path segment, e.g. a symbol typed by the user.
+     */
+    public static String encode(String value) {
+        // URLEncoder is for forms; %20 rather than '+' also holds in a path
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private <T> void send(HttpRequest request, BodyParser<T> parser, HostQueue host, CompletableFuture<T> result) {
+        try {
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApplyAsync(response -> {
+                        try (InputStream body = response.body()) {
+                            if (response.statusCode() == 429) {
+                                throw new RateLimitException("Too many requests to " + request.uri().getHost());
+                            }
+                            if (response.statusCode() != 200) {
+                                throw new IOException("HTTP " + response.statusCode() + " from " + request.uri().getHost());
+                            }
+                            return parser.parse(body);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, parsers)
+                    .whenComplete((parsed, error) -> {
+                        host.release();
+                        if (error != null) {
+                            result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error);
+                        } else {
+                            result.complete(parsed);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            host.release();
+            result.completeExceptionally(e);
+        }
+    }
+}
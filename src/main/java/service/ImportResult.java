@@ -0,0 +1,70 @@
+package service;
+
+import model.Transaction;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: what was read, what was kept, and how long it took.
+ */
+public class ImportResult {
+
+    private final List<Transaction> transactions;
+    private final int rejectedRows;
+    private final int assetsAdded;
+    private final int assetsUpdated;
+    private final long elapsedMs;
+
+    public ImportResult(List<Transaction> transactions, int rejectedRows, int assetsAdded, int assetsUpdated,
+                        long elapsedMs) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.rejectedRows = rejectedRows;
+        this.assetsAdded = assetsAdded;
+        this.assetsUpdated = assetsUpdated;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Data rows read, blank lines aside.
+     */
+    public int getRows() {
+        return transactions.size() + rejectedRows;
+    }
+
+    public int getImported() {
+        return transactions.size();
+    }
+
+    /**
+     * Rows that could not be parsed or failed validation.
+     */
+    public int getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public int getAssetsAdded() {
+        return assetsAdded;
+    }
+
+    public int getAssetsUpdated() {
+        return assetsUpdated;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    /**
+     * Every imported transaction in file order, including the ones that do not change holdings.
+     */
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows, %d imported, %d rejected, %d assets added, %d updated in %d ms",
+                getRows(), getImported(), rejectedRows, assetsAdded, assetsUpdated, elapsedMs);
+    }
+}
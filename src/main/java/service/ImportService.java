@@ -1,129 +1,440 @@
 package service;
 
 import model.*;
+import util.CsvTokenizer;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * ImportService handles the parsing of CSV files for portfolio data.
  * This is designed to be educational for students, showing how to parse
  * CSV files manually and map them to domain models.
+ *
+ * Files are read once, as a stream: the format is recognised from the first lines, then each
+ * row goes through parse, validate and apply before the next one is read, so even very large
+ * exports are imported in constant memory. Rows are split by a CsvTokenizer, which reads
+ * fields and numbers in place instead of creating strings for them.
+ *
+ * Large files are parsed in parallel: the data after the header is cut into byte ranges
+ * ending on line breaks, parsed concurrently on the fork/join pool, and applied to the
+ * portfolio chunk after chunk in file order, so holdings come out exactly as with a
+ * sequential import. Only a few chunks are parsed ahead of the one being applied.
+ *
+ * importBulk stages the whole file before touching the portfolio, so that a file failing
+ * halfway leaves it as it was; see ImportBatch.
  */
 public class ImportService {
 
+    // The header must appear within the first lines, read through a marked buffer
+    private static final int SNIFF_LINES = 20;
+    private static final int SNIFF_LIMIT = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Set to false to always import on the calling thread.
+     */
+    public static final String PARALLEL_PROPERTY = "portfolio.import.parallel";
+    // Below this, splitting the file costs more than it saves
+    private static final long PARALLEL_MIN_BYTES = 4 * 1024 * 1024;
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+    private static final int MAX_CHUNK_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * CSV layouts we recognise, by their header line.
+     */
+    private enum Format {
+        COINBASE,
+        SIMPLE;
+
+        static Format ofHeader(String line) {
+            if (line.startsWith("Timestamp,Transaction Type")) {
+                return COINBASE;
+            } else if (line.toLowerCase().startsWith("type,symbol,quantity")) {
+                return SIMPLE;
+            }
+            return null;
+        }
+    }
+
+    private boolean parallel = Boolean.parseBoolean(System.getProperty(PARALLEL_PROPERTY, "true"));
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
     public ImportService() {
     }
 
+    /**
+     * Whether large files are parsed on several threads.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Pool parsing the chunks of large files, the common pool by default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     /**
      * Main entry point for importing CSV files.
      * It detects the format by scanning the first few lines for known headers.
+     * Returns every imported transaction; use the Consumer variant not to keep them all.
      */
     public List<Transaction> importCSV(File file, Portfolio targetPortfolio) throws IOException {
-        boolean coinbaseMode = false;
-        boolean simpleMode = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            int linesRead = 0;
-            // Scan up to 20 lines for the header
-            while ((line = reader.readLine()) != null && linesRead < 20) {
-                if (line.startsWith("Timestamp,Transaction Type")) {
-                    coinbaseMode = true;
-                    break;
-                } else if (line.toLowerCase().startsWith("type,symbol,quantity")) {
-                    simpleMode = true;
-                    break;
-                }
-                linesRead++;
+        List<Transaction> transactions = new ArrayList<>();
+        importCSV(file, targetPortfolio, transactions::add);
+        return transactions;
+    }
+
+    /**
+     * Imports the file in a single pass, handing each transaction to the sink as soon as it
+     * is applied to the portfolio. Returns how many were imported.
+     */
+    public int importCSV(File file, Portfolio targetPortfolio, Consumer<Transaction> sink) throws IOException {
+        int[] imported = { 0 };
+        int skipped = parseFile(file, (format, tx) -> {
+            UserService.modify(() -> apply(format, targetPortfolio, tx));
+            sink.accept(tx);
+            imported[0]++;
+        });
+        reportSkipped(skipped);
+        UserService.save();
+        return imported[0];
+    }
+
+    /**
+     * Same as importCSV(File, ...) from any reader, which is not closed and not saved.
+     */
+    public int importCSV(Reader in, Portfolio targetPortfolio, Consumer<Transaction> sink) throws IOException {
+        int[] imported = { 0 };
+        int skipped = parseReader(in, (format, tx) -> {
+            UserService.modify(() -> apply(format, targetPortfolio, tx));
+            sink.accept(tx);
+            imported[0]++;
+        });
+        reportSkipped(skipped);
+        return imported[0];
+    }
+
+    /**
+     * Imports the file as a whole or not at all. The file is parsed first, its transactions
+     * and the resulting holdings staged aside; the portfolio is only changed once everything
+     * was read, in one step that is undone if it fails, then saved once.
+     * Holdings come out exactly as with importCSV.
+     */
+    public ImportResult importBulk(File file, Portfolio targetPortfolio) throws IOException {
+        long started = System.nanoTime();
+        ImportBatch batch = new ImportBatch(targetPortfolio);
+        int skipped = parseFile(file, batch::stage);
+        // Under the user's lock, so that a save never sees half of it
+        UserService.modify(batch::commit);
+        reportSkipped(skipped);
+        UserService.save();
+        return new ImportResult(batch.transactions, skipped, batch.added, batch.updated,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Receives the valid transactions of a file in file order.
+     */
+    private interface RowHandler {
+        void accept(Format format, Transaction tx);
+    }
+
+    /**
+     * Parses the file, on several threads when it is large. Returns the rejected row count.
+     */
+    private int parseFile(File file, RowHandler valid) throws IOException {
+        int skipped = -1;
+        if (parallel && pool.getParallelism() > 1 && file.length() >= PARALLEL_MIN_BYTES) {
+            skipped = parseParallel(file, valid);
+        }
+        if (skipped < 0) {
+            try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                skipped = parseReader(in, valid);
             }
         }
+        return skipped;
+    }
 
-        if (coinbaseMode) {
-            return importCoinbaseCSV(file, targetPortfolio);
-        } else if (simpleMode) {
-            return importSimpleCSV(file, targetPortfolio);
-        } else {
+    private int parseReader(Reader in, RowHandler valid) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, BUFFER_SIZE);
+        Format format = sniffFormat(reader);
+        if (format == null) {
             throw new IOException(
                     "Unknown CSV format. The file must contain a recognized header (e.g., Coinbase or Simple format).");
         }
+        // The reader is now right after the header: parse -> validate -> hand over, one row at a time
+        return parseRows(new CsvTokenizer(reader), format, tx -> valid.accept(format, tx));
     }
 
-    private List<Transaction> importCoinbaseCSV(File file, Portfolio targetPortfolio) throws IOException {
-        List<Transaction> transactions = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            boolean headerFound = false;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("Timestamp,Transaction Type")) {
-                    headerFound = true;
-                    continue;
+    private static void reportSkipped(int skipped) {
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " unreadable CSV rows");
+        }
+    }
+
+    /**
+     * Parses and validates the rows, handing the valid ones over. Returns how many were not.
+     */
+    private int parseRows(CsvTokenizer rows, Format format, Consumer<Transaction> valid) throws IOException {
+        int skipped = 0;
+        while (rows.nextRow()) {
+            if (rows.isBlank()) {
+                continue;
+            }
+            Transaction tx = format == Format.COINBASE ? parseCoinbaseRow(rows) : parseSimpleRow(rows);
+            if (tx == null || !isValid(tx)) {
+                skipped++;
+                continue;
+            }
+            valid.accept(tx);
+        }
+        return skipped;
+    }
+
+    /**
+     * Transactions parsed from one byte range of the file, in file order.
+     */
+    private static class Chunk {
+        final List<Transaction> transactions = new ArrayList<>();
+        int skipped;
+    }
+
+    /**
+     * Parses the rows of a byte range. Ranges end on line breaks, and a line break byte never
+     * occurs inside a multi-byte UTF-8 character, so each range decodes on its own.
+     */
+    private class ChunkParser extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Format format;
+        private final long start;
+        private final long end;
+
+        ChunkParser(FileChannel channel, Format format, long start, long end) {
+            this.channel = channel;
+            this.format = format;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            Chunk chunk = new Chunk();
+            try {
+                ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+                readFully(channel, bytes, start);
+                Reader in = new InputStreamReader(
+                        new ByteArrayInputStream(bytes.array(), 0, bytes.position()), StandardCharsets.UTF_8);
+                chunk.skipped = parseRows(new CsvTokenizer(in), format, chunk.transactions::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Parallel parse, returning the rejected row count, or -1 when the header is not found in
+     * the prefix it reads, leaving the file to the sequential parse to report.
+     */
+    private int parseParallel(File file, RowHandler valid) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] dataStart = new long[1];
+            Format format = sniffFormat(channel, dataStart);
+            if (format == null) {
+                return -1;
+            }
+
+            long size = channel.size();
+            int parallelism = pool.getParallelism();
+            long chunkSize = Math.min(MAX_CHUNK_BYTES,
+                    Math.max(MIN_CHUNK_BYTES, (size - dataStart[0]) / (parallelism * 4L)));
+            ArrayDeque<ForkJoinTask<Chunk>> parsing = new ArrayDeque<>();
+            long next = dataStart[0];
+            int skipped = 0;
+            try {
+                while (next < size || !parsing.isEmpty()) {
+                    // Keep every worker busy, without parsing the whole file ahead
+                    while (next < size && parsing.size() < parallelism * 2) {
+                        long end = next + chunkSize >= size ? size : nextLineStart(channel, next + chunkSize);
+                        parsing.add(pool.submit(new ChunkParser(channel, format, next, end)));
+                        next = end;
+                    }
+                    Chunk chunk = parsing.poll().join();
+                    for (Transaction tx : chunk.transactions) {
+                        valid.accept(format, tx);
+                    }
+                    skipped += chunk.skipped;
                 }
-                if (!headerFound || line.trim().isEmpty()) {
-                    continue;
+            } catch (UncheckedIOException e) {
+                // join() may rethrow a copy of the worker's exception, wrapping the original
+                Throwable cause = e;
+                while (cause instanceof UncheckedIOException) {
+                    cause = cause.getCause();
                 }
-                Transaction tx = parseCoinbaseLine(line);
-                if (tx != null) {
-                    transactions.add(tx);
-                    // Only "BUY" transactions affect our current asset holdings in this simplified
-                    // model
-                    if (tx.getType().equals("BUY")) {
-                        addOrUpdateAsset(targetPortfolio, tx);
-                    }
+                throw cause instanceof IOException ? (IOException) cause : new IOException(e);
+            } finally {
+                for (ForkJoinTask<Chunk> task : parsing) {
+                    task.cancel(false);
                 }
             }
+            return skipped;
         }
-        UserService.save();
-        return transactions;
     }
 
-    private List<Transaction> importSimpleCSV(File file, Portfolio targetPortfolio) throws IOException {
-        List<Transaction> transactions = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            boolean headerFound = false;
-            while ((line = reader.readLine()) != null) {
-                if (line.toLowerCase().startsWith("type,symbol,quantity")) {
-                    headerFound = true;
-                    continue;
-                }
-                if (!headerFound || line.trim().isEmpty()) {
-                    continue;
-                }
-                Transaction tx = parseSimpleLine(line);
-                if (tx != null) {
-                    transactions.add(tx);
-                    addOrUpdateAsset(targetPortfolio, tx);
+    /**
+     * Same as sniffFormat(BufferedReader) on the bytes of the file: the format, with the
+     * offset of the first byte after the header in dataStart.
+     */
+    private Format sniffFormat(FileChannel channel, long[] dataStart) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate((int) Math.min(SNIFF_LIMIT, channel.size()));
+        readFully(channel, prefix, 0);
+        byte[] bytes = prefix.array();
+        int length = prefix.position();
+        int lineStart = 0;
+        if (length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+            lineStart = 3;
+        }
+        for (int linesRead = 0; linesRead < SNIFF_LINES && lineStart < length; linesRead++) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            if (lineEnd == length && length < channel.size()) {
+                // Line cut by the end of the prefix
+                return null;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd + 1 < length && bytes[lineEnd] == '\r' && bytes[lineEnd + 1] == '\n') {
+                next++;
+            }
+            Format format = Format.ofHeader(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+            if (format != null) {
+                dataStart[0] = Math.min(next, length);
+                return format;
+            }
+            lineStart = next;
+        }
+        return null;
+    }
+
+    // Offset just after the first line break at or after position, or the end of the file
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long size = channel.size();
+        while (position < size) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = block.get(i);
+                if (b == '\n' || b == '\r') {
+                    return position + i + 1;
                 }
             }
+            position += read;
         }
-        UserService.save();
-        return transactions;
+        return size;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Looks for a known header in the first lines and leaves the reader just after it. When
+     * none is found the reader is reset to where it was.
+     */
+    private Format sniffFormat(BufferedReader reader) throws IOException {
+        reader.mark(SNIFF_LIMIT);
+        String line;
+        int linesRead = 0;
+        while (linesRead < SNIFF_LINES && (line = reader.readLine()) != null) {
+            if (linesRead == 0 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            Format format = Format.ofHeader(line);
+            if (format != null) {
+                return format;
+            }
+            linesRead++;
+        }
+        try {
+            reader.reset();
+        } catch (IOException e) {
+            // Prefix longer than the mark limit, nothing to go back to
+        }
+        return null;
+    }
+
+    /**
+     * Rows that parsed but cannot be merged into holdings.
+     */
+    private boolean isValid(Transaction tx) {
+        return tx.getSymbol() != null && !tx.getSymbol().isEmpty()
+                && tx.getQuantity() > 0 && Double.isFinite(tx.getQuantity())
+                && tx.getPrice() >= 0 && Double.isFinite(tx.getPrice());
     }
 
-    private Transaction parseCoinbaseLine(String line) {
-        String[] parts = parseCSVLine(line);
-        if (parts.length < 8)
+    private void apply(Format format, Portfolio targetPortfolio, Transaction tx) {
+        // Only "BUY" transactions of Coinbase exports affect our current asset holdings in
+        // this simplified model
+        if (format == Format.SIMPLE || tx.getType().equals("BUY")) {
+            addOrUpdateAsset(targetPortfolio, tx);
+        }
+    }
+
+    private Transaction parseCoinbaseRow(CsvTokenizer row) {
+        if (row.getFieldCount() < 8)
             return null;
 
         try {
-            String timestampStr = parts[0].trim();
-            String type = parts[1].trim().toUpperCase();
-            String asset = parts[2].trim();
-            double quantity = parseDouble(parts[3]);
-            String currency = parts[4].trim();
-            double spotPrice = parseDouble(parts[5]);
-            double total = parseDouble(parts[7]);
-
-            LocalDateTime timestamp;
-            try {
-                timestamp = LocalDateTime.parse(timestampStr.replace("Z", ""));
-            } catch (Exception e) {
+            String type = row.getUpperString(1);
+            String asset = row.getString(2);
+            double quantity = row.getLenientDouble(3);
+            String currency = row.getString(4);
+            double spotPrice = row.getLenientDouble(5);
+            double total = row.getLenientDouble(7);
+
+            LocalDateTime timestamp = row.getDateTime(0);
+            if (timestamp == null) {
                 timestamp = LocalDateTime.now();
             }
 
@@ -136,16 +447,15 @@ public class ImportService {
         }
     }
 
-    private Transaction parseSimpleLine(String line) {
-        String[] parts = parseCSVLine(line);
-        if (parts.length < 4)
+    private Transaction parseSimpleRow(CsvTokenizer row) {
+        if (row.getFieldCount() < 4)
             return null;
 
         try {
-            String type = parts[0].trim().toUpperCase();
-            String symbol = parts[1].trim().toUpperCase();
-            double quantity = parseDouble(parts[2]);
-            double price = parseDouble(parts[3]);
+            String type = row.getUpperString(0);
+            String symbol = row.getUpperString(1);
+            double quantity = row.getLenientDouble(2);
+            double price = row.getLenientDouble(3);
 
             return new Transaction(symbol, type, quantity, price, LocalDateTime.now());
         } catch (Exception e) {
@@ -154,33 +464,126 @@ public class ImportService {
     }
 
     /**
-     * Splits a CSV line handling quoted values correctly.
+     * A bulk import on its way: transactions and resulting holdings computed aside, then
+     * applied to the portfolio in one step. Holdings are computed with the same formula, in the
+     * same order, as addOrUpdateAsset, so both give the very same numbers.
      */
-    private String[] parseCSVLine(String line) {
-        List<String> parts = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        boolean inQuotes = false;
+    private class ImportBatch {
+        private final Portfolio portfolio;
+        final List<Transaction> transactions = new ArrayList<>();
+        // Applied to holdings, and so added to the history
+        private final List<Transaction> history = new ArrayList<>();
+        // Upper case symbol -> holding after the import, in order of first appearance
+        private final Map<String, Holding> holdings = new LinkedHashMap<>();
+        int added;
+        int updated;
+
+        ImportBatch(Portfolio portfolio) {
+            this.portfolio = portfolio;
+        }
+
+        void stage(Format format, Transaction tx) {
+            transactions.add(tx);
+            // Only "BUY" transactions of Coinbase exports affect holdings, as in apply
+            if (format != Format.SIMPLE && !tx.getType().equals("BUY")) {
+                return;
+            }
+            history.add(tx);
+            String key = tx.getSymbol().toUpperCase(Locale.ROOT);
+            Holding holding = holdings.get(key);
+            if (holding == null) {
+                Asset existing = portfolio.findAsset(tx.getSymbol());
+                if (existing == null) {
+                    holdings.put(key, new Holding(tx.getSymbol(), tx.getQuantity(), tx.getPrice()));
+                    return;
+                }
+                holding = new Holding(existing);
+                holdings.put(key, holding);
+            }
+            double oldTotalCost = holding.quantity * holding.avgPrice;
+            double newTotalCost = tx.getQuantity() * tx.getPrice();
+            double totalQty = holding.quantity + tx.getQuantity();
+            holding.quantity = totalQty;
+            holding.avgPrice = (oldTotalCost + newTotalCost) / totalQty;
+        }
 
-        for (char c : line.toCharArray()) {
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                parts.add(current.toString().trim());
-                current = new StringBuilder();
-            } else {
-                current.append(c);
+        /**
+         * Applies the staged holdings and history, restoring the portfolio if that fails.
+         */
+        void commit() {
+            List<Asset> assets = portfolio.getAssets();
+            List<Transaction> portfolioHistory = portfolio.getTransactionHistory();
+            int assetsBefore = assets.size();
+            int historyBefore = portfolioHistory.size();
+            List<Holding> applied = new ArrayList<>();
+            try {
+                for (Holding holding : holdings.values()) {
+                    if (holding.existing != null) {
+                        holding.existing.setQuantity(holding.quantity);
+                        holding.existing.setAvgPurchasePrice(holding.avgPrice);
+                        updated++;
+                    } else {
+                        Asset asset = new Asset(holding.symbol, holding.symbol, determineAssetType(holding.symbol),
+                                holding.quantity, holding.avgPrice);
+                        // Default current price to buy price initially
+                        asset.setCurrentPrice(holding.firstPrice);
+                        portfolio.addAsset(asset);
+                        added++;
+                    }
+                    applied.add(holding);
+                }
+                portfolioHistory.addAll(history);
+            } catch (RuntimeException e) {
+                for (Holding holding : applied) {
+                    if (holding.existing != null) {
+                        holding.existing.setQuantity(holding.previousQuantity);
+                        holding.existing.setAvgPurchasePrice(holding.previousAvgPrice);
+                    }
+                }
+                // New assets and transactions were appended, cut them off
+                if (assets.size() > assetsBefore) {
+                    assets.subList(assetsBefore, assets.size()).clear();
+                }
+                if (portfolioHistory.size() > historyBefore) {
+                    portfolioHistory.subList(historyBefore, portfolioHistory.size()).clear();
+                }
+                added = 0;
+                updated = 0;
+                throw e;
             }
         }
-        parts.add(current.toString().trim());
-        return parts.toArray(new String[0]);
     }
 
-    private double parseDouble(String value) {
-        try {
-            String cleaned = value.replace(",", ".").replaceAll("[^0-9.]", "");
-            return Double.parseDouble(cleaned);
-        } catch (Exception e) {
-            return 0;
+    /**
+     * Staged state of one holding.
+     */
+    private static class Holding {
+        final Asset existing;
+        final String symbol;
+        final double previousQuantity;
+        final double previousAvgPrice;
+        final double firstPrice;
+        double quantity;
+        double avgPrice;
+
+        Holding(Asset existing) {
+            this.existing = existing;
+            this.symbol = existing.getSymbol();
+            this.previousQuantity = existing.getQuantity();
+            this.previousAvgPrice = existing.getAvgPurchasePrice();
+            this.firstPrice = existing.getCurrentPrice();
+            this.quantity = previousQuantity;
+            this.avgPrice = previousAvgPrice;
+        }
+
+        Holding(String symbol, double quantity, double price) {
+            this.existing = null;
+            this.symbol = symbol;
+            this.previousQuantity = 0;
+            this.previousAvgPrice = 0;
+            this.firstPrice = price;
+            this.quantity = quantity;
+            this.avgPrice = price;
         }
     }
 
@@ -195,13 +598,7 @@ public class ImportService {
         double quantity = tx.getQuantity();
         double price = tx.getPrice();
 
-        Asset existing = null;
-        for (Asset a : portfolio.getAssets()) {
-            if (a.getSymbol().equalsIgnoreCase(symbol)) {
-                existing = a;
-                break;
-            }
-        }
+        Asset existing = portfolio.findAsset(symbol);
 
         if (existing != null) {
             // Weighted average formula: (NewQty * NewPrice + OldQty * OldPrice) / (NewQty +
@@ -219,19 +616,14 @@ public class ImportService {
             Asset newAsset = new Asset(symbol, symbol, type, quantity, price);
             // Default current price to buy price initially
             newAsset.setCurrentPrice(price);
-            portfolio.getAssets().add(newAsset);
+            portfolio.addAsset(newAsset);
         }
 
         portfolio.getTransactionHistory().add(tx);
     }
 
     private AssetType determineAssetType(String symbol) {
-        String s = symbol.toUpperCase();
-        String[] cryptos = { "BTC", "ETH", "LTC", "SOL", "LINK", "XRP", "ADA", "DOGE", "BNB", "DOT", "MATIC", "AVAX" };
-        for (String c : cryptos) {
-            if (s.equals(c))
-                return AssetType.CRYPTO;
-        }
-        return AssetType.STOCK; // Default to stock
+        // Unknown symbols default to stock
+        return SymbolRegistry.getInstance().getAssetType(symbol);
     }
 }
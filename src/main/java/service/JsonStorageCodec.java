@@ -0,0 +1,108 @@
+package service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import model.Portfolio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Readable JSON shards, the historical format.
+ *
+ * The JSON of each portfolio is kept along with the portfolio revision it was produced from,
+ * so a save only serializes the portfolios that changed and copies the others as is.
+ */
+public class JsonStorageCodec implements StorageCodec {
+
+    private static class Fragment {
+        final long revision;
+        final String json;
+
+        Fragment(long revision, String json) {
+            this.revision = revision;
+            this.json = json;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper shardMapper;
+    // Weak keys: fragments go away with the portfolios they were made from
+    private final Map<Portfolio, Fragment> fragments = Collections.synchronizedMap(new WeakHashMap<>());
+    private long fragmentHits;
+    private long fragmentMisses;
+
+    public JsonStorageCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        ObjectWriter portfolioWriter = objectMapper.writerFor(Portfolio.class);
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Portfolio.class, new StdSerializer<Portfolio>(Portfolio.class) {
+            @Override
+            public void serialize(Portfolio portfolio, JsonGenerator gen, SerializerProvider provider)
+                    throws IOException {
+                gen.writeRawValue(fragmentOf(portfolio, portfolioWriter));
+            }
+        });
+        this.shardMapper = objectMapper.copy().registerModule(module);
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public String getExtension() {
+        return ".json";
+    }
+
+    @Override
+    public void write(UserStore.ShardData data, OutputStream out) throws IOException {
+        shardMapper.writeValue(out, data);
+    }
+
+    @Override
+    public UserStore.ShardData read(InputStream in) throws IOException {
+        return objectMapper.readValue(in, UserStore.ShardData.class);
+    }
+
+    /**
+     * Portfolios written from a cached fragment since this codec was created.
+     */
+    public synchronized long getFragmentHits() {
+        return fragmentHits;
+    }
+
+    /**
+     * Portfolios that had to be serialized since this codec was created.
+     */
+    public synchronized long getFragmentMisses() {
+        return fragmentMisses;
+    }
+
+    private String fragmentOf(Portfolio portfolio, ObjectWriter portfolioWriter) throws IOException {
+        // Taken before serializing: a change made meanwhile makes the fragment stale, never lost
+        long revision = portfolio.getRevision();
+        Fragment fragment = fragments.get(portfolio);
+        if (fragment != null && fragment.revision == revision) {
+            synchronized (this) {
+                fragmentHits++;
+            }
+            return fragment.json;
+        }
+        String json = portfolioWriter.writeValueAsString(portfolio);
+        fragments.put(portfolio, new Fragment(revision, json));
+        synchronized (this) {
+            fragmentMisses++;
+        }
+        return json;
+    }
+}
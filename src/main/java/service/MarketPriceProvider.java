@@ -0,0 +1,158 @@
+package service;
+
+import model.AssetType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Real market prices. Symbols in the registry go straight to their provider; unknown ones are
+ * tried on Alpha Vantage, then on CoinGecko, and the registry learns which one answered.
+ */
+public class MarketPriceProvider implements PriceProvider {
+
+    private final PriceProvider stocks;
+    private final PriceProvider cryptos;
+    private final SymbolRegistry registry;
+
+    public MarketPriceProvider(PriceProvider stocks, PriceProvider cryptos) {
+        this(stocks, cryptos, SymbolRegistry.getInstance());
+    }
+
+    public MarketPriceProvider(PriceProvider stocks, PriceProvider cryptos, SymbolRegistry registry) {
+        this.stocks = stocks;
+        this.cryptos = cryptos;
+        this.registry = registry;
+    }
+
+    @Override
+    public String getName() {
+        return "live";
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols) {
+        return getPrices(symbols, RequestPriority.NORMAL);
+    }
+
+    @Override
+    public void prioritize(Collection<String> symbols, RequestPriority priority) {
+        stocks.prioritize(symbols, priority);
+        cryptos.prioritize(symbols, priority);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols, RequestPriority priority) {
+        Set<String> cryptoSymbols = new HashSet<>();
+        Set<String> stockSymbols = new HashSet<>();
+        Set<String> unknownSymbols = new HashSet<>();
+        for (String symbol : symbols) {
+            String provider = registry.getProvider(symbol);
+            if (SymbolRegistry.COINGECKO.equals(provider)) {
+                cryptoSymbols.add(symbol);
+            } else if (provider != null) {
+                stockSymbols.add(symbol);
+            } else {
+                unknownSymbols.add(symbol);
+            }
+        }
+
+        // Each leg recovers on its own, so one failing provider does not lose the others' prices
+        CompletableFuture<Map<String, Double>> cryptoPrices = fetch(cryptos, cryptoSymbols, priority)
+                .thenApply(found -> learn(found, AssetType.CRYPTO, SymbolRegistry.COINGECKO));
+        CompletableFuture<Map<String, Double>> stockPrices = fetch(stocks, stockSymbols, priority)
+                .thenApply(found -> learn(found, AssetType.STOCK, SymbolRegistry.ALPHA_VANTAGE));
+        CompletableFuture<Map<String, Double>> unknownPrices = unknownSymbols.isEmpty()
+                ? CompletableFuture.completedFuture(new HashMap<>())
+                : fetch(stocks, unknownSymbols, priority).thenCompose(found -> {
+            Set<String> notStocks = new HashSet<>(unknownSymbols);
+            notStocks.removeAll(found.keySet());
+            learn(found, AssetType.STOCK, SymbolRegistry.ALPHA_VANTAGE);
+            if (notStocks.isEmpty()) {
+                return CompletableFuture.completedFuture(found);
+            }
+            // Not a stock (or Alpha Vantage failed), maybe a crypto
+            return fetch(cryptos, notStocks, priority).thenApply(more -> {
+                Map<String, Double> prices = new HashMap<>(found);
+                prices.putAll(learn(more, AssetType.CRYPTO, SymbolRegistry.COINGECKO));
+                return prices;
+            });
+        });
+
+        return cryptoPrices.thenCombine(stockPrices, (crypto, stock) -> {
+            Map<String, Double> prices = new HashMap<>(crypto);
+            prices.putAll(stock);
+            return prices;
+        }).thenCombine(unknownPrices, (known, unknown) -> {
+            Map<String, Double> prices = new HashMap<>(known);
+            prices.putAll(unknown);
+            // NaN: known but not available now (rate limited)
+            prices.values().removeIf(price -> price.isNaN());
+            return prices;
+        });
+    }
+
+    /**
+     * Prices from one provider; a failure is logged and leaves its symbols unpriced.
+     */
+    private static CompletableFuture<Map<String, Double>> fetch(PriceProvider provider, Set<String> symbols,
+                                                                RequestPriority priority) {
+        if (symbols.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        CompletableFuture<Map<String, Double>> fetched;
+        try {
+            fetched = provider.getPrices(symbols, priority);
+        } catch (RuntimeException e) {
+            fetched = CompletableFuture.failedFuture(e);
+        }
+        return fetched.handle((found, error) -> {
+            if (error != null) {
+                System.err.println("Error fetching prices from " + provider.getName() + ": " + error.getMessage());
+                return new HashMap<>();
+            }
+            return found;
+        });
+    }
+
+    // Symbols actually priced are remembered with the provider that priced them
+    private Map<String, Double> learn(Map<String, Double> prices, AssetType type, String provider) {
+        List<SymbolRegistry.Entry> found = new ArrayList<>();
+        for (Map.Entry<String, Double> price : prices.entrySet()) {
+            if (!price.getValue().isNaN() && price.getValue() > 0) {
+                String id = SymbolRegistry.COINGECKO.equals(provider)
+                        ? CoinGeckoPriceProvider.mapToCoinGeckoId(price.getKey()) : price.getKey();
+                found.add(new SymbolRegistry.Entry(price.getKey(), registry.isKnown(price.getKey())
+                        ? registry.getAssetType(price.getKey()) : type, provider, id));
+            }
+        }
+        // One save for the whole batch
+        registry.learnAll(found);
+        return prices;
+    }
+
+    @Override
+    public CompletableFuture<PriceSeries> getDailySeries(String symbol, LocalDate from, LocalDate to) {
+        if (SymbolRegistry.COINGECKO.equals(registry.getProvider(symbol))) {
+            return cryptos.getDailySeries(symbol, from, to);
+        }
+        return stocks.getDailySeries(symbol, from, to).handle((series, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(series);
+            }
+            return cryptos.getDailySeries(symbol, from, to);
+        }).thenCompose(series -> series);
+    }
+}
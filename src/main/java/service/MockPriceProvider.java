@@ -0,0 +1,95 @@
+package service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Demo prices: a fixed table with a small random variation, random prices for other symbols.
+ */
+public class MockPriceProvider implements PriceProvider {
+
+    // Mock data for demo
+    private static final Map<String, Double> MOCK_STOCK_PRICES = new HashMap<>();
+    private static final Map<String, Double> MOCK_CRYPTO_PRICES = new HashMap<>();
+
+    static {
+        // Mock stock prices
+        MOCK_STOCK_PRICES.put("AAPL", 178.50);
+        MOCK_STOCK_PRICES.put("MSFT", 374.25);
+        MOCK_STOCK_PRICES.put("GOOGL", 141.80);
+        MOCK_STOCK_PRICES.put("TSLA", 248.90);
+        MOCK_STOCK_PRICES.put("AMZN", 178.25);
+        MOCK_STOCK_PRICES.put("NVDA", 495.50);
+        MOCK_STOCK_PRICES.put("META", 505.75);
+        MOCK_STOCK_PRICES.put("JPM", 195.30);
+        MOCK_STOCK_PRICES.put("V", 275.40);
+        MOCK_STOCK_PRICES.put("SPY", 478.20);
+        MOCK_STOCK_PRICES.put("QQQ", 405.60);
+
+        // Mock crypto prices
+        MOCK_CRYPTO_PRICES.put("BTC", 43250.00);
+        MOCK_CRYPTO_PRICES.put("ETH", 2280.50);
+        MOCK_CRYPTO_PRICES.put("BNB", 312.75);
+        MOCK_CRYPTO_PRICES.put("XRP", 0.62);
+        MOCK_CRYPTO_PRICES.put("SOL", 98.40);
+        MOCK_CRYPTO_PRICES.put("ADA", 0.58);
+        MOCK_CRYPTO_PRICES.put("DOGE", 0.082);
+    }
+
+    @Override
+    public String getName() {
+        return "mock";
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols) {
+        Map<String, Double> prices = new HashMap<>();
+        for (String symbol : symbols) {
+            prices.put(symbol, getMockPrice(symbol));
+        }
+        return CompletableFuture.completedFuture(prices);
+    }
+
+    /**
+     * Get mock price with small random variation
+     */
+    private double getMockPrice(String symbol) {
+        Random rand = new Random();
+        double variation = 0.98 + (rand.nextDouble() * 0.04); // ±2% variation
+
+        if (MOCK_STOCK_PRICES.containsKey(symbol)) {
+            return MOCK_STOCK_PRICES.get(symbol) * variation;
+        } else if (MOCK_CRYPTO_PRICES.containsKey(symbol)) {
+            return MOCK_CRYPTO_PRICES.get(symbol) * variation;
+        }
+
+        // Unknown symbol - return random value
+        return 50 + rand.nextDouble() * 100;
+    }
+
+    /**
+     * Mock closes oscillating around the mock price. Derived from the symbol and the day only,
+     * so asking twice for the same day gives the same close.
+     */
+    @Override
+    public CompletableFuture<PriceSeries> getDailySeries(String symbol, LocalDate from, LocalDate to) {
+        double base = MOCK_STOCK_PRICES.getOrDefault(symbol,
+                MOCK_CRYPTO_PRICES.getOrDefault(symbol, 50.0 + Math.floorMod(symbol.hashCode(), 100)));
+        boolean crypto = MOCK_CRYPTO_PRICES.containsKey(symbol);
+        Map<LocalDate, Double> closes = new HashMap<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (!crypto && date.getDayOfWeek().getValue() >= 6) {
+                continue; // Markets closed
+            }
+            long day = date.toEpochDay();
+            double noise = new Random(symbol.hashCode() * 31L + day).nextGaussian() * 0.01;
+            double trend = 1 + 0.15 * Math.sin((day + symbol.hashCode() % 97) / 30.0);
+            closes.put(date, base * trend * (1 + noise));
+        }
+        return CompletableFuture.completedFuture(PriceSeries.of(symbol, closes));
+    }
+}
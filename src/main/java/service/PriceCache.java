@@ -0,0 +1,390 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe price cache shared by every ApiService.
+ *
+ * - entries hold the price together with the time it was fetched
+ * - the cache is bounded: past maxEntries the least recently used symbol is evicted
+ * - entries expire after a TTL, configurable per symbol
+ * - concurrent misses on the same symbol wait for one upstream fetch (single flight)
+ *
+ * Refresh ahead: with a soft TTL shorter than the hard one, an entry older than the soft TTL
+ * is still returned, flagged stale, and refreshed in the background. Callers only wait for
+ * the network once an entry is older than the hard TTL.
+ *
+ * A fetch that fails or finds no price never replaces a price already cached: the last known
+ * one keeps being served, stale, until a fresh one arrives.
+ *
+ * Restored entries, saved by a previous run, are served stale until restoredTtlMs even when
+ * older than the hard TTL, so the first screens render from the last known prices while the
+ * current ones are fetched.
+ */
+public class PriceCache {
+
+    public static class Entry {
+        private final double price;
+        private final long fetchedAt;
+        private final boolean restored;
+
+        public Entry(double price, long fetchedAt) {
+            this(price, fetchedAt, false);
+        }
+
+        public Entry(double price, long fetchedAt, boolean restored) {
+            this.price = price;
+            this.fetchedAt = fetchedAt;
+            this.restored = restored;
+        }
+
+        public double getPrice() { return price; }
+        public long getFetchedAt() { return fetchedAt; }
+        // Loaded from a previous run rather than fetched by this one
+        public boolean isRestored() { return restored; }
+    }
+
+    /**
+     * Loads prices of the given symbols; symbols left out of the result are not cached.
+     */
+    public interface Loader {
+        CompletableFuture<Map<String, Double>> load(Set<String> symbols);
+    }
+
+    private final int maxEntries;
+    private volatile long softTtlMs;
+    private volatile long hardTtlMs;
+    private volatile long restoredTtlMs;
+    // { soft, hard } per symbol
+    private final Map<String, long[]> ttlBySymbol = new ConcurrentHashMap<>();
+    // Access ordered, guarded by itself
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong restoredHits = new AtomicLong();
+
+    public PriceCache(int maxEntries, long defaultTtlMs) {
+        this.maxEntries = maxEntries;
+        this.softTtlMs = defaultTtlMs;
+        this.hardTtlMs = defaultTtlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > PriceCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Plain expiry: entries are fresh for ttlMs, then reloaded while the caller waits.
+     */
+    public void setDefaultTtl(long ttlMs) {
+        setDefaultTtl(ttlMs, ttlMs);
+    }
+
+    /**
+     * Entries are fresh for softTtlMs, then served stale and refreshed in the background,
+     * and unusable after hardTtlMs.
+     */
+    public void setDefaultTtl(long softTtlMs, long hardTtlMs) {
+        if (softTtlMs > hardTtlMs) {
+            throw new IllegalArgumentException("Soft TTL " + softTtlMs + " is longer than hard TTL " + hardTtlMs);
+        }
+        this.softTtlMs = softTtlMs;
+        this.hardTtlMs = hardTtlMs;
+    }
+
+    public long getSoftTtl() { return softTtlMs; }
+    public long getHardTtl() { return hardTtlMs; }
+
+    /**
+     * How old a restored entry may be and still be served, stale, while it is refreshed.
+     * 0 (default) treats restored entries like the others.
+     */
+    public void setRestoredTtl(long restoredTtlMs) {
+        this.restoredTtlMs = restoredTtlMs;
+    }
+
+    public long getRestoredTtl() { return restoredTtlMs; }
+
+    /**
+     * Overrides the TTL of one symbol, e.g. shorter for volatile cryptos. A negative value
+     * restores the default.
+     */
+    public void setTtl(String symbol, long ttlMs) {
+        setTtl(symbol, ttlMs, ttlMs);
+    }
+
+    public void setTtl(String symbol, long softTtlMs, long hardTtlMs) {
+        if (hardTtlMs < 0) {
+            ttlBySymbol.remove(symbol);
+        } else {
+            ttlBySymbol.put(symbol, new long[] { Math.min(softTtlMs, hardTtlMs), hardTtlMs });
+        }
+    }
+
+    /**
+     * The cached entry if it is still usable, fresh or stale, without loading anything.
+     */
+    public Entry getIfPresent(String symbol) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(symbol);
+        }
+        if (entry == null || ageOf(entry) >= maxAge(symbol, entry)) {
+            return null;
+        }
+        return entry;
+    }
+
+    public void put(String symbol, double price) {
+        put(symbol, new Entry(price, System.currentTimeMillis()));
+    }
+
+    /**
+     * Stores an entry keeping the time it was fetched.
+     */
+    public void put(String symbol, Entry entry) {
+        synchronized (entries) {
+            entries.put(symbol, entry);
+        }
+    }
+
+    /**
+     * Puts back a price saved by a previous run, unless a newer one is already cached.
+     */
+    public void restore(String symbol, double price, long fetchedAt) {
+        synchronized (entries) {
+            Entry current = entries.get(symbol);
+            if (current == null || current.getFetchedAt() < fetchedAt) {
+                entries.put(symbol, new Entry(price, fetchedAt, true));
+            }
+        }
+    }
+
+    /**
+     * Copy of the cached entries, least recently used first, e.g. to save them.
+     */
+    public Map<String, Entry> snapshot() {
+        synchronized (entries) {
+            return new LinkedHashMap<>(entries);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Prices of the symbols in the order asked for, see getQuotes.
+     */
+    public CompletableFuture<Map<String, Double>> getAll(Collection<String> symbols, Loader loader) {
+        return getQuotes(symbols, loader).thenApply(quotes -> {
+            Map<String, Double> prices = new LinkedHashMap<>();
+            for (PriceQuote quote : quotes.values()) {
+                prices.put(quote.getSymbol(), quote.getPrice());
+            }
+            return prices;
+        });
+    }
+
+    /**
+     * Quotes of the symbols in the order asked for. Symbols that are neither cached nor
+     * already being fetched are passed to the loader in a single call; symbols another caller
+     * is fetching are taken from that fetch. Stale symbols are answered from the cache right
+     * away and refreshed together by one more loader call nobody waits for.
+     * Symbols without a price are left out.
+     */
+    public CompletableFuture<Map<String, PriceQuote>> getQuotes(Collection<String> symbols, Loader loader) {
+        Map<String, CompletableFuture<Entry>> pending = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Entry>> owned = new HashMap<>();
+        Map<String, CompletableFuture<Entry>> refreshing = new HashMap<>();
+        for (String symbol : new LinkedHashSet<>(symbols)) {
+            Entry entry = getIfPresent(symbol);
+            if (entry != null) {
+                pending.put(symbol, CompletableFuture.completedFuture(entry));
+                if (ageOf(entry) < softTtl(symbol)) {
+                    hits.incrementAndGet();
+                } else {
+                    staleHits.incrementAndGet();
+                    if (entry.isRestored()) {
+                        restoredHits.incrementAndGet();
+                    }
+                    // At most one refresh per symbol, whoever noticed first
+                    CompletableFuture<Entry> mine = new CompletableFuture<>();
+                    if (inFlight.putIfAbsent(symbol, mine) == null) {
+                        refreshing.put(symbol, mine);
+                    }
+                }
+                continue;
+            }
+            misses.incrementAndGet();
+            CompletableFuture<Entry> mine = new CompletableFuture<>();
+            CompletableFuture<Entry> existing = inFlight.putIfAbsent(symbol, mine);
+            if (existing != null) {
+                pending.put(symbol, existing);
+                continue;
+            }
+            // A fetch may have completed between the lookup and the registration
+            Entry loaded = getIfPresent(symbol);
+            if (loaded != null) {
+                inFlight.remove(symbol, mine);
+                mine.complete(loaded);
+                pending.put(symbol, mine);
+                continue;
+            }
+            owned.put(symbol, mine);
+            pending.put(symbol, mine);
+        }
+
+        if (!owned.isEmpty()) {
+            loads.incrementAndGet();
+            load(owned, loader);
+        }
+        if (!refreshing.isEmpty()) {
+            refreshes.incrementAndGet();
+            load(refreshing, loader);
+        }
+
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0]))
+                .handle((done, error) -> {
+                    Map<String, PriceQuote> quotes = new LinkedHashMap<>();
+                    for (Map.Entry<String, CompletableFuture<Entry>> symbol : pending.entrySet()) {
+                        CompletableFuture<Entry> future = symbol.getValue();
+                        Entry entry = future.isCompletedExceptionally() ? null : future.getNow(null);
+                        if (entry != null) {
+                            quotes.put(symbol.getKey(), new PriceQuote(symbol.getKey(), entry.getPrice(),
+                                    entry.getFetchedAt(), ageOf(entry) >= softTtl(symbol.getKey())));
+                        }
+                    }
+                    return quotes;
+                });
+    }
+
+    /**
+     * Completes once the symbols being fetched or refreshed right now are cached, whatever the
+     * outcome; immediately when none is.
+     */
+    public CompletableFuture<Void> whenLoaded(Collection<String> symbols) {
+        List<CompletableFuture<Entry>> loading = new ArrayList<>();
+        for (String symbol : symbols) {
+            CompletableFuture<Entry> fetch = inFlight.get(symbol);
+            if (fetch != null) {
+                loading.add(fetch);
+            }
+        }
+        return CompletableFuture.allOf(loading.toArray(new CompletableFuture<?>[0])).handle((done, error) -> null);
+    }
+
+    private void load(Map<String, CompletableFuture<Entry>> owned, Loader loader) {
+        CompletableFuture<Map<String, Double>> loading;
+        try {
+            loading = loader.load(owned.keySet());
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((prices, error) -> {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, CompletableFuture<Entry>> symbol : owned.entrySet()) {
+                Double price = error == null ? prices.get(symbol.getKey()) : null;
+                Entry entry = null;
+                Entry kept = null;
+                if (price != null && price > 0) {
+                    entry = new Entry(price, now);
+                    put(symbol.getKey(), entry);
+                } else {
+                    // A failed fetch does not replace the last known price
+                    kept = keepLastKnown(symbol.getKey(), price, now);
+                    entry = kept != null ? kept : price != null ? new Entry(price, now) : null;
+                }
+                // Unregistered only once cached, so a newcomer either joins the fetch or hits
+                inFlight.remove(symbol.getKey(), symbol.getValue());
+                if (error != null && kept == null) {
+                    symbol.getValue().completeExceptionally(error);
+                } else {
+                    symbol.getValue().complete(entry);
+                }
+            }
+        });
+    }
+
+    /**
+     * After a fetch without a usable price (-1, NaN, none): keeps the cached entry if it has a
+     * price and returns it while still usable, else null. The failure is only cached for
+     * symbols without a price, so that they are not fetched again before the TTL expires.
+     */
+    private Entry keepLastKnown(String symbol, Double price, long now) {
+        synchronized (entries) {
+            Entry current = entries.get(symbol);
+            if (current != null && current.getPrice() > 0) {
+                return ageOf(current) < maxAge(symbol, current) ? current : null;
+            }
+            if (price != null) {
+                entries.put(symbol, new Entry(price, now));
+            }
+            return null;
+        }
+    }
+
+    private static long ageOf(Entry entry) {
+        return System.currentTimeMillis() - entry.getFetchedAt();
+    }
+
+    private long softTtl(String symbol) {
+        long[] ttl = ttlBySymbol.get(symbol);
+        return ttl != null ? ttl[0] : softTtlMs;
+    }
+
+    private long hardTtl(String symbol) {
+        long[] ttl = ttlBySymbol.get(symbol);
+        return ttl != null ? ttl[1] : hardTtlMs;
+    }
+
+    private long maxAge(String symbol, Entry entry) {
+        long hardTtl = hardTtl(symbol);
+        return entry.isRestored() ? Math.max(hardTtl, restoredTtlMs) : hardTtl;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getStaleHitCount() { return staleHits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getLoadCount() { return loads.get(); }
+    public long getRefreshCount() { return refreshes.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    public long getRestoredHitCount() { return restoredHits.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("PriceCache[size=%d, hits=%d, stale=%d, restored=%d, misses=%d, loads=%d, refreshes=%d, evictions=%d]",
+                size(), getHitCount(), getStaleHitCount(), getRestoredHitCount(), getMissCount(), getLoadCount(),
+                getRefreshCount(), getEvictionCount());
+    }
+}
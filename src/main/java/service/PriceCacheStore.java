@@ -0,0 +1,138 @@
+package service;
+
+import util.AtomicFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Last known prices of each provider, saved so that the next start does not begin with an
+ * empty cache.
+ *
+ * File layout (through AtomicFiles): version, provider count, then for each provider its
+ * name, entry count and the entries as symbol, price, fetch time (epoch millis).
+ */
+public class PriceCacheStore {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    // Read at startup, kept for the providers not used in this run
+    private final Map<String, Map<String, PriceCache.Entry>> saved = new HashMap<>();
+
+    public PriceCacheStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the file, a missing or unreadable one leaves the store empty.
+     */
+    public synchronized void load() {
+        try {
+            Map<String, Map<String, PriceCache.Entry>> read = AtomicFiles.readWithFallback(file.toPath(), in -> {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+                int version = data.readInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Unsupported price cache format " + version);
+                }
+                Map<String, Map<String, PriceCache.Entry>> sources = new HashMap<>();
+                int sourceCount = data.readInt();
+                for (int i = 0; i < sourceCount; i++) {
+                    String source = data.readUTF();
+                    int count = data.readInt();
+                    Map<String, PriceCache.Entry> entries = new LinkedHashMap<>();
+                    for (int j = 0; j < count; j++) {
+                        String symbol = data.readUTF();
+                        double price = data.readDouble();
+                        long fetchedAt = data.readLong();
+                        entries.put(symbol, new PriceCache.Entry(price, fetchedAt, true));
+                    }
+                    sources.put(source, entries);
+                }
+                return sources;
+            });
+            if (read != null) {
+                saved.putAll(read);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading saved prices: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Puts the saved prices of a provider back into its cache.
+     */
+    public synchronized void restoreInto(String source, PriceCache cache) {
+        Map<String, PriceCache.Entry> entries = saved.get(source);
+        if (entries == null) {
+            return;
+        }
+        for (Map.Entry<String, PriceCache.Entry> entry : entries.entrySet()) {
+            cache.restore(entry.getKey(), entry.getValue().getPrice(), entry.getValue().getFetchedAt());
+        }
+    }
+
+    /**
+     * Writes the current prices of the given caches, keyed by provider name, over the ones saved
+     * so far. Saved prices the caches no longer have, or only have without a price (-1), are
+     * kept; entries older than maxAgeMs are left out.
+     */
+    public synchronized void save(Map<String, PriceCache> caches, long maxAgeMs) {
+        long oldest = System.currentTimeMillis() - maxAgeMs;
+        for (Map.Entry<String, PriceCache> cache : caches.entrySet()) {
+            Map<String, PriceCache.Entry> entries = saved.computeIfAbsent(cache.getKey(), k -> new LinkedHashMap<>());
+            for (Map.Entry<String, PriceCache.Entry> entry : cache.getValue().snapshot().entrySet()) {
+                // Only a price replaces the saved one, a failed fetch never does
+                PriceCache.Entry previous = entries.get(entry.getKey());
+                if (entry.getValue().getPrice() > 0
+                        && (previous == null || previous.getFetchedAt() <= entry.getValue().getFetchedAt())) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        Map<String, Map<String, PriceCache.Entry>> kept = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, PriceCache.Entry>> source : saved.entrySet()) {
+            Map<String, PriceCache.Entry> entries = new LinkedHashMap<>();
+            for (Map.Entry<String, PriceCache.Entry> entry : source.getValue().entrySet()) {
+                if (entry.getValue().getPrice() > 0 && entry.getValue().getFetchedAt() >= oldest) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (!entries.isEmpty()) {
+                kept.put(source.getKey(), entries);
+            }
+        }
+
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            System.err.println("Cannot create " + directory);
+            return;
+        }
+        try {
+            AtomicFiles.write(file.toPath(), out -> {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(FORMAT_VERSION);
+                data.writeInt(kept.size());
+                for (Map.Entry<String, Map<String, PriceCache.Entry>> source : kept.entrySet()) {
+                    data.writeUTF(source.getKey());
+                    data.writeInt(source.getValue().size());
+                    for (Map.Entry<String, PriceCache.Entry> entry : source.getValue().entrySet()) {
+                        data.writeUTF(entry.getKey());
+                        data.writeDouble(entry.getValue().getPrice());
+                        data.writeLong(entry.getValue().getFetchedAt());
+                    }
+                }
+                data.flush();
+            });
+        } catch (IOException e) {
+            System.err.println("Error saving prices: " + e.getMessage());
+        }
+    }
+}
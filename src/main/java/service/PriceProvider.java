@@ -0,0 +1,110 @@
+package service;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of market prices behind ApiService. Caching, batching of concurrent callers and the
+ * history store are handled by ApiService; a provider only answers for the symbols asked.
+ */
+public interface PriceProvider {
+
+    /**
+     * System property selecting the provider at startup: "mock" (default), "live" for
+     * Alpha Vantage and CoinGecko, "alphavantage", "coingecko" or "replay:[file]".
+     */
+    String PROVIDER_PROPERTY = "portfolio.prices.provider";
+
+    /**
+     * Replay speed for "replay:[file]", 1 being real time (default).
+     */
+    String REPLAY_SPEED_PROPERTY = "portfolio.prices.replaySpeed";
+
+    /**
+     * Calls per minute allowed to the live providers, defaults match their free tiers.
+     */
+    String ALPHA_VANTAGE_RATE_PROPERTY = "portfolio.prices.alphavantage.callsPerMinute";
+    String COINGECKO_RATE_PROPERTY = "portfolio.prices.coingecko.callsPerMinute";
+
+    /**
+     * Identifies the provider, prices of different providers are cached apart.
+     */
+    String getName();
+
+    /**
+     * Current prices of upper case symbols. Unknown symbols are left out of the result.
+     */
+    CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols);
+
+    /**
+     * Same as getPrices(symbols), for providers that queue calls: requests of higher
+     * priority are sent first.
+     */
+    default CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols, RequestPriority priority) {
+        return getPrices(symbols);
+    }
+
+    /**
+     * Raises the priority of symbols already waiting to be fetched, e.g. when the user opens
+     * a portfolio whose prices background monitoring requested first.
+     */
+    default void prioritize(Collection<String> symbols, RequestPriority priority) {
+    }
+
+    /**
+     * Daily closes between from and to, both inclusive. Fails when the provider has no
+     * history or could not be reached.
+     */
+    default CompletableFuture<PriceSeries> getDailySeries(String symbol, LocalDate from, LocalDate to) {
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException(getName() + " has no price history"));
+    }
+
+    /**
+     * Whether prices come from the real market, and their history is worth keeping on disk.
+     */
+    default boolean isLive() {
+        return false;
+    }
+
+    static PriceProvider forName(String name, HttpFetcher http) {
+        if (name.startsWith("replay:")) {
+            double speed = Double.parseDouble(System.getProperty(REPLAY_SPEED_PROPERTY, "1"));
+            return new ReplayPriceProvider(Path.of(name.substring("replay:".length())), speed);
+        }
+        switch (name.toLowerCase()) {
+            case "live":
+                return new MarketPriceProvider(throttledAlphaVantage(http), throttledCoinGecko(http));
+            case "alphavantage":
+                return throttledAlphaVantage(http);
+            case "coingecko":
+                return throttledCoinGecko(http);
+            default:
+                return new MockPriceProvider();
+        }
+    }
+
+    /**
+     * One symbol per GLOBAL_QUOTE call, 5 calls a minute on the free tier.
+     */
+    static ThrottledPriceProvider throttledAlphaVantage(HttpFetcher http) {
+        double rate = Double.parseDouble(System.getProperty(ALPHA_VANTAGE_RATE_PROPERTY, "5"));
+        return new ThrottledPriceProvider(new AlphaVantagePriceProvider(http), rate, (int) Math.max(1, rate), 1);
+    }
+
+    /**
+     * Up to 250 coins per simple/price call, about 30 calls a minute without a key.
+     */
+    static ThrottledPriceProvider throttledCoinGecko(HttpFetcher http) {
+        double rate = Double.parseDouble(System.getProperty(COINGECKO_RATE_PROPERTY, "30"));
+        return new ThrottledPriceProvider(new CoinGeckoPriceProvider(http), rate, 5, 250);
+    }
+
+    static PriceProvider fromSystemProperty(HttpFetcher http) {
+        return forName(System.getProperty(PROVIDER_PROPERTY, "mock"), http);
+    }
+}
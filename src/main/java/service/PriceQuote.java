@@ -0,0 +1,33 @@
+package service;
+
+/**
+ * A price together with how fresh it is. A stale quote is the last known price, served while
+ * a newer one is being fetched in the background.
+ */
+public class PriceQuote {
+    private final String symbol;
+    private final double price;
+    private final long fetchedAt;
+    private final boolean stale;
+
+    public PriceQuote(String symbol, double price, long fetchedAt, boolean stale) {
+        this.symbol = symbol;
+        this.price = price;
+        this.fetchedAt = fetchedAt;
+        this.stale = stale;
+    }
+
+    public String getSymbol() { return symbol; }
+    public double getPrice() { return price; }
+    public long getFetchedAt() { return fetchedAt; }
+    public boolean isStale() { return stale; }
+
+    public long getAgeMs() {
+        return System.currentTimeMillis() - fetchedAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %.4f%s", symbol, price, stale ? " (stale, " + getAgeMs() / 1000 + "s old)" : "");
+    }
+}
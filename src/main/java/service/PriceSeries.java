@@ -0,0 +1,275 @@
+package service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Daily closes of one symbol, sorted by date.
+ *
+ * Stored as two parallel columns (epoch day, close) rather than a map of date strings, so a
+ * date range is found by binary search and iterating does not allocate. A series is immutable;
+ * range() returns a view sharing the same arrays.
+ */
+public class PriceSeries {
+
+    private static final int[] NO_DAYS = new int[0];
+    private static final double[] NO_CLOSES = new double[0];
+
+    private final String symbol;
+    private final int[] days;
+    private final double[] closes;
+    private final int offset;
+    private final int length;
+
+    public PriceSeries(String symbol, int[] days, double[] closes) {
+        this(symbol, days, closes, 0, days.length);
+    }
+
+    private PriceSeries(String symbol, int[] days, double[] closes, int offset, int length) {
+        this.symbol = symbol;
+        this.days = days;
+        this.closes = closes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static PriceSeries empty(String symbol) {
+        return new PriceSeries(symbol, NO_DAYS, NO_CLOSES);
+    }
+
+    /**
+     * Builds a series from points in any order; the last close given for a day wins.
+     */
+    public static PriceSeries of(String symbol, Map<LocalDate, Double> closesByDate) {
+        int[] days = new int[closesByDate.size()];
+        double[] closes = new double[days.length];
+        int i = 0;
+        for (Map.Entry<LocalDate, Double> point : closesByDate.entrySet()) {
+            days[i] = (int) point.getKey().toEpochDay();
+            closes[i++] = point.getValue();
+        }
+        return ofColumns(symbol, days, closes, i);
+    }
+
+    /**
+     * Builds a series from the first count points of the columns, which it takes over.
+     * Ascending or descending input (providers answer newest first) is ordered without
+     * sorting; if a day appears twice, the later point wins.
+     */
+    public static PriceSeries ofColumns(String symbol, int[] days, double[] closes, int count) {
+        boolean ascending = true;
+        boolean descending = true;
+        for (int i = 1; i < count && (ascending || descending); i++) {
+            ascending &= days[i - 1] < days[i];
+            descending &= days[i - 1] > days[i];
+        }
+        if (ascending) {
+            return new PriceSeries(symbol, days, closes, 0, count);
+        }
+        if (descending) {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int day = days[i];
+                days[i] = days[j];
+                days[j] = day;
+                double close = closes[i];
+                closes[i] = closes[j];
+                closes[j] = close;
+            }
+            return new PriceSeries(symbol, days, closes, 0, count);
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // Stable, so among equal days the later point ends up last
+        Arrays.sort(order, (a, b) -> Integer.compare(days[a], days[b]));
+        int[] sortedDays = new int[count];
+        double[] sortedCloses = new double[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (n > 0 && sortedDays[n - 1] == days[order[i]]) {
+                n--;
+            }
+            sortedDays[n] = days[order[i]];
+            sortedCloses[n++] = closes[order[i]];
+        }
+        return new PriceSeries(symbol, sortedDays, sortedCloses, 0, n);
+    }
+
+    public String getSymbol() { return symbol; }
+
+    public int size() { return length; }
+
+    public boolean isEmpty() { return length == 0; }
+
+    public int getEpochDay(int i) { return days[offset + i]; }
+
+    public LocalDate getDate(int i) { return LocalDate.ofEpochDay(days[offset + i]); }
+
+    public double getClose(int i) { return closes[offset + i]; }
+
+    public LocalDate getFirstDate() { return isEmpty() ? null : getDate(0); }
+
+    public LocalDate getLastDate() { return isEmpty() ? null : getDate(length - 1); }
+
+    public double getLastClose() { return isEmpty() ? -1 : getClose(length - 1); }
+
+    /**
+     * Close of the given day, or of the last trading day before it; -1 if there is none.
+     */
+    public double getCloseAt(LocalDate date) {
+        int i = upperBound((int) date.toEpochDay()) - 1;
+        return i >= offset ? closes[i] : -1;
+    }
+
+    /**
+     * Points between from and to, both inclusive.
+     */
+    public PriceSeries range(LocalDate from, LocalDate to) {
+        int start = lowerBound((int) from.toEpochDay());
+        int end = upperBound((int) to.toEpochDay());
+        return new PriceSeries(symbol, days, closes, start, Math.max(0, end - start));
+    }
+
+    /**
+     * Standard deviation of the daily log returns, NaN with fewer than two returns.
+     */
+    public double getDailyVolatility() {
+        if (length < 3) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        double sumSquares = 0;
+        int n = 0;
+        for (int i = offset + 1; i < offset + length; i++) {
+            if (closes[i - 1] <= 0 || closes[i] <= 0) {
+                continue;
+            }
+            double r = Math.log(closes[i] / closes[i - 1]);
+            sum += r;
+            sumSquares += r * r;
+            n++;
+        }
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = sum / n;
+        return Math.sqrt(Math.max(0, (sumSquares - n * mean * mean) / (n - 1)));
+    }
+
+    /**
+     * Date ordered copy keyed by ISO date, the shape getHistoricalPrices always returned.
+     */
+    public Map<String, Double> toMap() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (int i = 0; i < length; i++) {
+            map.put(getDate(i).toString(), getClose(i));
+        }
+        return map;
+    }
+
+    /**
+     * This series with the points of other added, other winning on days both have.
+     */
+    public PriceSeries merge(PriceSeries other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return new PriceSeries(symbol, other.copyDays(), other.copyCloses());
+        }
+        int[] mergedDays = new int[length + other.length];
+        double[] mergedCloses = new double[mergedDays.length];
+        int i = 0, j = 0, n = 0;
+        while (i < length || j < other.length) {
+            if (j >= other.length || (i < length && getEpochDay(i) < other.getEpochDay(j))) {
+                mergedDays[n] = getEpochDay(i);
+                mergedCloses[n++] = getClose(i++);
+            } else {
+                if (i < length && getEpochDay(i) == other.getEpochDay(j)) {
+                    i++;
+                }
+                mergedDays[n] = other.getEpochDay(j);
+                mergedCloses[n++] = other.getClose(j++);
+            }
+        }
+        return new PriceSeries(symbol, Arrays.copyOf(mergedDays, n), Arrays.copyOf(mergedCloses, n));
+    }
+
+    /**
+     * Epoch day of an ISO date (yyyy-MM-dd) given as characters, Integer.MIN_VALUE if the
+     * text is not one. Lets parsers read dates without building strings.
+     */
+    static int parseEpochDay(char[] text, int offset, int length) {
+        if (length != 10 || text[offset + 4] != '-' || text[offset + 7] != '-') {
+            return Integer.MIN_VALUE;
+        }
+        int year = digits(text, offset, 4);
+        int month = digits(text, offset + 5, 2);
+        int day = digits(text, offset + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return Integer.MIN_VALUE;
+        }
+        try {
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (java.time.DateTimeException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private static int digits(char[] text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = text[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    int[] copyDays() {
+        return Arrays.copyOfRange(days, offset, offset + length);
+    }
+
+    double[] copyCloses() {
+        return Arrays.copyOfRange(closes, offset, offset + length);
+    }
+
+    // First index holding a day >= epochDay
+    private int lowerBound(int epochDay) {
+        int low = offset, high = offset + length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index holding a day > epochDay
+    private int upperBound(int epochDay) {
+        int low = offset, high = offset + length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceSeries[" + symbol + ", " + length + " days"
+                + (isEmpty() ? "" : " " + getFirstDate() + ".." + getLastDate()) + "]";
+    }
+}
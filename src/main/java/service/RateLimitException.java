@@ -0,0 +1,15 @@
+package service;
+
+import java.io.IOException;
+
+/**
+ * The provider refused a call because we went over its rate limit.
+ */
+public class RateLimitException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,202 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Replays recorded ticks, for load tests and reproducible runs without any network.
+ *
+ * The file holds one tick per line, "timestampMs,SYMBOL,price", in time order; blank lines,
+ * lines starting with # and a header line are skipped. It is read as the replay clock moves,
+ * so recordings of any size can be replayed. A symbol is priced at its last tick so far.
+ *
+ * With a positive speed the clock follows the wall clock from the first tick, speed times
+ * faster (1 is real time). With speed 0 it only moves through advance/advanceTo, so the same
+ * calls always see the same prices.
+ */
+public class ReplayPriceProvider implements PriceProvider {
+
+    public interface TickListener {
+        void onTick(long timestamp, String symbol, double price);
+    }
+
+    private final Path file;
+    private final double speed;
+    private final List<TickListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private BufferedReader reader;
+    private boolean started;
+    private boolean finished;
+    private long startTimestamp;
+    private long startNanos;
+    private long manualTime;
+    private final Map<String, Double> latest = new HashMap<>();
+    private long tickCount;
+    // Read ahead, not applied yet
+    private long nextTimestamp;
+    private String nextSymbol;
+    private double nextPrice;
+
+    public ReplayPriceProvider(Path file, double speed) {
+        this.file = file;
+        this.speed = speed;
+    }
+
+    @Override
+    public String getName() {
+        return "replay:" + file.getFileName();
+    }
+
+    public void addListener(TickListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TickListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols) {
+        Map<String, Double> prices = new HashMap<>();
+        synchronized (this) {
+            catchUp();
+            for (String symbol : symbols) {
+                Double price = latest.get(symbol);
+                if (price != null) {
+                    prices.put(symbol, price);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(prices);
+    }
+
+    /**
+     * Moves a manual clock (speed 0) forward and applies the ticks up to it.
+     */
+    public synchronized void advance(long millis) {
+        start();
+        advanceTo(manualTime + millis);
+    }
+
+    public synchronized void advanceTo(long timestamp) {
+        if (speed > 0) {
+            throw new IllegalStateException("Replay runs on the wall clock at speed " + speed);
+        }
+        start();
+        manualTime = Math.max(manualTime, timestamp);
+        catchUp();
+    }
+
+    /**
+     * Time of the recording being replayed, -1 before the first tick was read.
+     */
+    public synchronized long getReplayTime() {
+        if (!started || finished && tickCount == 0) {
+            return -1;
+        }
+        return clock();
+    }
+
+    public synchronized long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Whether every tick of the file was applied.
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    private long clock() {
+        if (speed > 0) {
+            return startTimestamp + (long) ((System.nanoTime() - startNanos) / 1_000_000.0 * speed);
+        }
+        return manualTime;
+    }
+
+    private void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        try {
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Cannot replay " + file + ": " + e.getMessage());
+            finished = true;
+            return;
+        }
+        if (readNext()) {
+            startTimestamp = nextTimestamp;
+            manualTime = nextTimestamp;
+        }
+        startNanos = System.nanoTime();
+    }
+
+    private void catchUp() {
+        start();
+        if (finished) {
+            return;
+        }
+        long now = clock();
+        while (nextTimestamp <= now) {
+            latest.put(nextSymbol, nextPrice);
+            tickCount++;
+            for (TickListener listener : listeners) {
+                listener.onTick(nextTimestamp, nextSymbol, nextPrice);
+            }
+            if (!readNext()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the next tick into next*, false (and closes the file) at the end.
+     */
+    private boolean readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int first = line.indexOf(',');
+                int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+                if (second < 0) {
+                    continue;
+                }
+                try {
+                    nextTimestamp = Long.parseLong(line.substring(0, first).trim());
+                    nextPrice = Double.parseDouble(line.substring(second + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue; // Header
+                }
+                nextSymbol = line.substring(first + 1, second).trim().toUpperCase(Locale.ROOT);
+                return true;
+            }
+        } catch (IOException e) {
+            System.err.println("Error replaying " + file + ": " + e.getMessage());
+        }
+        finished = true;
+        try {
+            reader.close();
+        } catch (IOException ignored) {
+        }
+        reader = null;
+        return false;
+    }
+}
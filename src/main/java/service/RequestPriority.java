@@ -0,0 +1,12 @@
+package service;
+
+/**
+ * Order in which queued price requests are sent when a provider limits the call rate.
+ */
+public enum RequestPriority {
+    // Prices the user is looking at
+    INTERACTIVE,
+    NORMAL,
+    // Monitoring and other work nobody waits for
+    BACKGROUND
+}
@@ -0,0 +1,108 @@
+package service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces save requests into a single write on a background thread.
+ * A save runs once no new request arrived for the quiet period, or at the latest
+ * maxDelay after the first request of a burst. All disk I/O submitted through
+ * execute() runs on the same thread, so it stays ordered with the saves.
+ */
+public class SaveScheduler {
+
+    private final Runnable saveTask;
+    private final ScheduledExecutorService executor;
+    private long quietPeriodMs;
+    private long maxDelayMs;
+
+    private ScheduledFuture<?> pending;
+    private long burstStart;
+
+    public SaveScheduler(Runnable saveTask, long quietPeriodMs, long maxDelayMs) {
+        this.saveTask = saveTask;
+        this.quietPeriodMs = quietPeriodMs;
+        this.maxDelayMs = maxDelayMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-data-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Marks the data dirty; the actual write happens later on the saver thread.
+     */
+    public synchronized void requestSave() {
+        long now = System.currentTimeMillis();
+        if (pending != null && !pending.isDone()) {
+            // Keep postponing while the burst lasts, but not beyond maxDelay
+            if (now - burstStart >= maxDelayMs) {
+                return;
+            }
+            if (!pending.cancel(false)) {
+                // Already writing: queue a follow-up so this change is not missed
+                burstStart = now;
+            }
+        } else {
+            burstStart = now;
+        }
+        long delay = Math.min(quietPeriodMs, Math.max(0, burstStart + maxDelayMs - now));
+        pending = executor.schedule(this::runSave, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs other disk I/O on the saver thread, after everything submitted before it.
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Writes pending changes now and waits until they are on disk.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+        Future<?> done = executor.submit(saveTask);
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Failed to flush data: " + e.getCause().getMessage());
+        }
+    }
+
+    public synchronized void setQuietPeriod(long quietPeriodMs) {
+        this.quietPeriodMs = quietPeriodMs;
+    }
+
+    public synchronized void setMaxDelay(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+
+    private void runSave() {
+        synchronized (this) {
+            pending = null;
+        }
+        try {
+            saveTask.run();
+        } catch (RuntimeException e) {
+            System.err.println("Background save failed: " + e.getMessage());
+        }
+    }
+}
@@ -15,23 +15,39 @@ public class SavingsService {
         User user = UserService.getCurrentUser();
         if (user != null) {
             SavingsAccount account = new SavingsAccount(name, initialBalance, interestRate);
-            user.getSavingsAccounts().add(account);
-            UserService.save();
+            UserService.modify(() -> {
+                user.getSavingsAccounts().add(account);
+                UserService.recordAccountAdded(account);
+            });
         }
     }
 
     public void deposit(SavingsAccount account, double amount) {
-        account.deposit(amount);
-        Transaction tx = new Transaction(account.getName(), "DEPOSIT", amount, 1.0, LocalDateTime.now());
-        account.getTransactions().add(tx);
-        UserService.save();
+        deposit(account, amount, null);
+    }
+
+    public void deposit(SavingsAccount account, double amount, String note) {
+        UserService.modify(() -> {
+            account.deposit(amount);
+            Transaction tx = new Transaction(account.getName(), "DEPOSIT", amount, 1.0, LocalDateTime.now());
+            tx.setNotes(note);
+            account.getTransactions().add(tx);
+            UserService.recordSavingsTransaction(account, tx);
+        });
     }
 
     public void withdraw(SavingsAccount account, double amount) {
-        account.withdraw(amount);
-        Transaction tx = new Transaction(account.getName(), "WITHDRAWAL", amount, 1.0, LocalDateTime.now());
-        account.getTransactions().add(tx);
-        UserService.save();
+        withdraw(account, amount, null);
+    }
+
+    public void withdraw(SavingsAccount account, double amount, String note) {
+        UserService.modify(() -> {
+            account.withdraw(amount);
+            Transaction tx = new Transaction(account.getName(), "WITHDRAWAL", amount, 1.0, LocalDateTime.now());
+            tx.setNotes(note);
+            account.getTransactions().add(tx);
+            UserService.recordSavingsTransaction(account, tx);
+        });
     }
 
     public double calculateInterest(SavingsAccount account, int months) {
@@ -43,8 +59,11 @@ public class SavingsService {
     public void deleteSavingsAccount(SavingsAccount account) {
         User user = UserService.getCurrentUser();
         if (user != null) {
-            user.getSavingsAccounts().removeIf(a -> a.getName().equals(account.getName()));
-            UserService.save();
+            UserService.modify(() -> {
+                if (user.getSavingsAccounts().removeIf(a -> a.getName().equals(account.getName()))) {
+                    UserService.recordAccountRemoved(account);
+                }
+            });
         }
     }
 }
\ No newline at end of file
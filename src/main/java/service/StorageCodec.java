@@ -0,0 +1,41 @@
+package service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encoding of a user shard on disk. The codec only sees the plain content:
+ * XOR coding, checksums and atomic replacement are handled by UserStore.
+ */
+public interface StorageCodec {
+
+    /**
+     * System property selecting the codec at startup ("json" or "binary").
+     */
+    String CODEC_PROPERTY = "portfolio.storage.codec";
+
+    String getName();
+
+    /**
+     * File extension of shards written by this codec, including the dot.
+     */
+    String getExtension();
+
+    void write(UserStore.ShardData data, OutputStream out) throws IOException;
+
+    UserStore.ShardData read(InputStream in) throws IOException;
+
+    static StorageCodec forName(String name, ObjectMapper objectMapper) {
+        if ("binary".equalsIgnoreCase(name)) {
+            return new BinaryStorageCodec();
+        }
+        return new JsonStorageCodec(objectMapper);
+    }
+
+    static StorageCodec fromSystemProperty(ObjectMapper objectMapper) {
+        return forName(System.getProperty(CODEC_PROPERTY, "json"), objectMapper);
+    }
+}
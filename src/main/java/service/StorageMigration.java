@@ -0,0 +1,86 @@
+package service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One-shot tool rewriting every shard in the given storage format.
+ * Before migrating it compares the formats on the actual data (size, encode and decode time).
+ *
+ * Usage: java -cp ... service.StorageMigration binary|json [--compare-only]
+ * Start the application with -Dportfolio.storage.codec=... matching the migrated format.
+ */
+public class StorageMigration {
+
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: StorageMigration binary|json [--compare-only]");
+            System.exit(1);
+        }
+        boolean compareOnly = args.length > 1 && "--compare-only".equals(args[1]);
+
+        ObjectMapper mapper = UserService.createObjectMapper();
+        StorageCodec target = StorageCodec.forName(args[0], mapper);
+        UserStore store = UserService.createStore(mapper, target);
+
+        Map<String, UserStore.IndexEntry> index = store.loadIndex();
+        Map<UserStore.IndexEntry, UserStore.ShardData> shards = new LinkedHashMap<>();
+        for (Map.Entry<String, UserStore.IndexEntry> user : index.entrySet()) {
+            UserStore.ShardData data = store.loadShard(user.getValue());
+            if (data == null) {
+                System.err.println("No shard for " + user.getKey() + ", skipped");
+                continue;
+            }
+            shards.put(user.getValue(), data);
+        }
+
+        for (StorageCodec codec : List.of(new JsonStorageCodec(mapper), new BinaryStorageCodec())) {
+            compare(codec, shards.values());
+        }
+        if (compareOnly) {
+            return;
+        }
+
+        // Pending journal entries stay valid: the shard keeps its journal sequence
+        for (Map.Entry<UserStore.IndexEntry, UserStore.ShardData> shard : shards.entrySet()) {
+            store.saveShard(shard.getKey(), shard.getValue());
+        }
+        System.out.println("Migrated " + shards.size() + " shard(s) to " + target.getName());
+    }
+
+    private static void compare(StorageCodec codec, Collection<UserStore.ShardData> shards) throws IOException {
+        long bytes = 0;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int round = 0; round <= BENCHMARK_ROUNDS; round++) {
+            for (UserStore.ShardData data : shards) {
+                long start = System.nanoTime();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                codec.write(data, out);
+                long encoded = System.nanoTime();
+                codec.read(new ByteArrayInputStream(out.toByteArray()));
+                long decoded = System.nanoTime();
+                // Round 0 warms up the JIT and is not counted
+                if (round > 0) {
+                    encodeNanos += encoded - start;
+                    decodeNanos += decoded - encoded;
+                } else {
+                    bytes += out.size();
+                }
+            }
+        }
+        System.out.printf("%-6s %10d bytes  save %8.3f ms  load %8.3f ms  (%d shards, avg of %d rounds)%n",
+                codec.getName(), bytes,
+                encodeNanos / 1e6 / BENCHMARK_ROUNDS, decodeNanos / 1e6 / BENCHMARK_ROUNDS,
+                shards.size(), BENCHMARK_ROUNDS);
+    }
+}
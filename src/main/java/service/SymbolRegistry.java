@@ -0,0 +1,280 @@
+package service;
+
+import model.AssetType;
+import util.AtomicFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What we know about each symbol: its asset type, the provider that prices it and its id
+ * there (CoinGecko ids differ from tickers).
+ *
+ * The symbols known in advance come from the symbols.csv resource. Others are learned: a
+ * symbol a provider priced is recorded with it and saved under portfolio_data, so it goes
+ * straight to that provider from then on instead of trying each one in turn.
+ */
+public class SymbolRegistry {
+
+    public static final String ALPHA_VANTAGE = "alphavantage";
+    public static final String COINGECKO = "coingecko";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String RESOURCE = "symbols.csv";
+
+    private static final SymbolRegistry instance =
+            new SymbolRegistry(new File("portfolio_data", "symbols.dat").toPath());
+
+    /**
+     * A known symbol. Immutable, replaced as a whole when something new is learned.
+     */
+    public static class Entry {
+        private final String symbol;
+        private final AssetType type;
+        private final String provider;
+        private final String providerId;
+
+        public Entry(String symbol, AssetType type, String provider, String providerId) {
+            this.symbol = symbol;
+            this.type = type;
+            this.provider = provider;
+            this.providerId = providerId;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public AssetType getType() {
+            return type;
+        }
+
+        public String getProvider() {
+            return provider;
+        }
+
+        public String getProviderId() {
+            return providerId;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + "," + type + "," + provider + "," + providerId;
+        }
+    }
+
+    private final Path learnedFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Confirmed by a provider, saved to learnedFile
+    private final Map<String, Entry> learned = new ConcurrentHashMap<>();
+    // Assumed but not confirmed yet
+    private final Set<String> assumed = ConcurrentHashMap.newKeySet();
+
+    public static SymbolRegistry getInstance() {
+        return instance;
+    }
+
+    public SymbolRegistry(Path learnedFile) {
+        this.learnedFile = learnedFile;
+        loadResource();
+        loadLearned();
+    }
+
+    public Entry get(String symbol) {
+        return entries.get(symbol.toUpperCase(Locale.ROOT));
+    }
+
+    public boolean isKnown(String symbol) {
+        return entries.containsKey(symbol.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Asset type of the symbol, STOCK when unknown.
+     */
+    public AssetType getAssetType(String symbol) {
+        Entry entry = get(symbol);
+        return entry != null ? entry.getType() : AssetType.STOCK;
+    }
+
+    /**
+     * Provider pricing the symbol, null when unknown.
+     */
+    public String getProvider(String symbol) {
+        Entry entry = get(symbol);
+        return entry != null ? entry.getProvider() : null;
+    }
+
+    /**
+     * Id of the symbol at the provider, the ticker itself when unknown.
+     */
+    public String getProviderId(String symbol) {
+        Entry entry = get(symbol);
+        return entry != null && entry.getProviderId() != null
+                ? entry.getProviderId() : symbol.toUpperCase(Locale.ROOT);
+    }
+
+    public boolean isCrypto(String symbol) {
+        return getAssetType(symbol) == AssetType.CRYPTO;
+    }
+
+    /**
+     * Records that a provider priced the symbol. Saved only when this is new.
+     */
+    public void learn(String symbol, AssetType type, String provider, String providerId) {
+        learnAll(List.of(new Entry(symbol, type, provider, providerId)));
+    }
+
+    /**
+     * Records the symbols a provider priced in one batch, with a single save if any is new.
+     * A null provider id stands for the default one.
+     */
+    public void learnAll(Collection<Entry> found) {
+        boolean changed = false;
+        for (Entry entry : found) {
+            changed |= record(entry);
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    private boolean record(Entry found) {
+        String key = found.getSymbol().toUpperCase(Locale.ROOT);
+        String provider = found.getProvider();
+        String providerId = found.getProviderId();
+        Entry current = entries.get(key);
+        if (current != null && !assumed.contains(key) && current.getType() == found.getType()
+                && provider.equals(current.getProvider())
+                && (providerId == null || providerId.equals(current.getProviderId()))) {
+            return false;
+        }
+        Entry entry = new Entry(key, found.getType(), provider,
+                providerId != null ? providerId : defaultId(key, provider));
+        entries.put(key, entry);
+        learned.put(key, entry);
+        assumed.remove(key);
+        return true;
+    }
+
+    /**
+     * Takes the type of an unknown symbol for granted, e.g. tokens seen on a blockchain, so that
+     * its first lookup goes to the right provider. Not saved until a provider confirms it.
+     */
+    public void assume(String symbol, AssetType type) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        String provider = providerOf(type);
+        if (entries.putIfAbsent(key, new Entry(key, type, provider, defaultId(key, provider))) == null) {
+            assumed.add(key);
+        }
+    }
+
+    /**
+     * Provider of a type when nothing else is known: CoinGecko for cryptos, Alpha Vantage otherwise.
+     */
+    public static String providerOf(AssetType type) {
+        return type == AssetType.CRYPTO ? COINGECKO : ALPHA_VANTAGE;
+    }
+
+    private static String defaultId(String symbol, String provider) {
+        return COINGECKO.equals(provider) ? symbol.toLowerCase(Locale.ROOT) : symbol;
+    }
+
+    private void loadResource() {
+        try (InputStream in = SymbolRegistry.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                System.err.println("Symbol list " + RESOURCE + " not found");
+                return;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                try {
+                    String symbol = fields[0].trim().toUpperCase(Locale.ROOT);
+                    AssetType type = AssetType.valueOf(fields[1].trim());
+                    String provider = fields.length > 2 ? fields[2].trim() : providerOf(type);
+                    String id = fields.length > 3 ? fields[3].trim() : defaultId(symbol, provider);
+                    entries.put(symbol, new Entry(symbol, type, provider, id));
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping symbol line '" + line + "': " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading symbol list: " + e.getMessage());
+        }
+    }
+
+    private void loadLearned() {
+        try {
+            List<Entry> saved = AtomicFiles.readWithFallback(learnedFile, in -> {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+                int version = data.readInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Unsupported symbol registry format " + version);
+                }
+                int count = data.readInt();
+                List<Entry> read = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String symbol = data.readUTF();
+                    AssetType type = AssetType.valueOf(data.readUTF());
+                    read.add(new Entry(symbol, type, data.readUTF(), data.readUTF()));
+                }
+                return read;
+            });
+            if (saved != null) {
+                for (Entry entry : saved) {
+                    // Learned from the providers, so more accurate than the bundled list
+                    entries.put(entry.getSymbol(), entry);
+                    learned.put(entry.getSymbol(), entry);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error loading learned symbols: " + e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        File directory = learnedFile.toFile().getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            System.err.println("Cannot create " + directory);
+            return;
+        }
+        List<Entry> snapshot = new ArrayList<>(learned.values());
+        try {
+            AtomicFiles.write(learnedFile, out -> {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(FORMAT_VERSION);
+                data.writeInt(snapshot.size());
+                for (Entry entry : snapshot) {
+                    data.writeUTF(entry.getSymbol());
+                    data.writeUTF(entry.getType().name());
+                    data.writeUTF(entry.getProvider());
+                    data.writeUTF(entry.getProviderId());
+                }
+                data.flush();
+            });
+        } catch (IOException e) {
+            System.err.println("Error saving learned symbols: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package service;
+
+import util.TokenBucket;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a provider within its rate limit.
+ *
+ * Every call to the provider takes a token from a bucket. Requests that find the bucket empty
+ * are queued by priority and sent as tokens come back: the highest priority first, and each
+ * call filled with as many queued symbols as the provider takes per call, lower priorities
+ * riding along. A symbol already queued is not queued twice; asking for it again only raises
+ * its priority. When the provider answers that it is over its limit anyway, the bucket is
+ * emptied and the call put back in the queue. Symbols refused MAX_ATTEMPTS times are priced
+ * NaN, "no price for now", so that a composite provider does not look them up elsewhere.
+ */
+public class ThrottledPriceProvider implements PriceProvider {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Wakes queues up when a token is due, shared by all throttled providers
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "price-throttle");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Request {
+        RequestPriority priority;
+        final long enqueuedAt = System.nanoTime();
+        int attempts;
+
+        Request(RequestPriority priority) {
+            this.priority = priority;
+        }
+    }
+
+    private static class SymbolRequest extends Request {
+        final String symbol;
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+
+        SymbolRequest(String symbol, RequestPriority priority) {
+            super(priority);
+            this.symbol = symbol;
+        }
+    }
+
+    private static class SeriesRequest extends Request {
+        final String symbol;
+        final LocalDate from;
+        final LocalDate to;
+        final CompletableFuture<PriceSeries> result = new CompletableFuture<>();
+
+        SeriesRequest(String symbol, LocalDate from, LocalDate to, RequestPriority priority) {
+            super(priority);
+            this.symbol = symbol;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final PriceProvider delegate;
+    private final TokenBucket bucket;
+    private final int symbolsPerCall;
+
+    // Guarded by this
+    private final Map<RequestPriority, LinkedHashMap<String, SymbolRequest>> symbols = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, ArrayDeque<SeriesRequest>> series = new EnumMap<>(RequestPriority.class);
+    private final Map<String, SymbolRequest> queuedSymbols = new HashMap<>();
+    private boolean wakeUpScheduled;
+    private long calls;
+    private long rateLimited;
+    private long dispatched;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    /**
+     * @param callsPerMinute  sustained rate allowed by the provider
+     * @param burst           calls that may go out at once after a quiet period
+     * @param symbolsPerCall  symbols the provider prices in one call
+     */
+    public ThrottledPriceProvider(PriceProvider delegate, double callsPerMinute, int burst, int symbolsPerCall) {
+        this.delegate = delegate;
+        this.bucket = new TokenBucket(burst, callsPerMinute);
+        this.symbolsPerCall = Math.max(1, symbolsPerCall);
+        for (RequestPriority priority : RequestPriority.values()) {
+            symbols.put(priority, new LinkedHashMap<>());
+            series.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean isLive() {
+        return delegate.isLive();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> symbols) {
+        return getPrices(symbols, RequestPriority.NORMAL);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Double>> getPrices(Set<String> requested, RequestPriority priority) {
+        Map<String, CompletableFuture<Double>> results = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String symbol : requested) {
+                SymbolRequest request = queuedSymbols.get(symbol);
+                if (request == null) {
+                    request = new SymbolRequest(symbol, priority);
+                    queuedSymbols.put(symbol, request);
+                    symbols.get(priority).put(symbol, request);
+                } else {
+                    raise(request, priority);
+                }
+                results.put(symbol, request.result);
+            }
+        }
+        dispatch();
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, Double> prices = new HashMap<>();
+            for (Map.Entry<String, CompletableFuture<Double>> result : results.entrySet()) {
+                Double price = result.getValue().join();
+                if (price != null) {
+                    prices.put(result.getKey(), price);
+                }
+            }
+            return prices;
+        });
+    }
+
+    @Override
+    public synchronized void prioritize(Collection<String> requested, RequestPriority priority) {
+        for (String symbol : requested) {
+            SymbolRequest request = queuedSymbols.get(symbol);
+            if (request != null) {
+                raise(request, priority);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<PriceSeries> getDailySeries(String symbol, LocalDate from, LocalDate to) {
+        SeriesRequest request = new SeriesRequest(symbol, from, to, RequestPriority.NORMAL);
+        synchronized (this) {
+            series.get(request.priority).add(request);
+        }
+        dispatch();
+        return request.result;
+    }
+
+    private void raise(SymbolRequest request, RequestPriority priority) {
+        if (priority.compareTo(request.priority) < 0) {
+            symbols.get(request.priority).remove(request.symbol);
+            request.priority = priority;
+            // Behind the requests already waiting at its new priority
+            symbols.get(priority).put(request.symbol, request);
+        }
+    }
+
+    /**
+     * Sends queued calls while tokens are available, then schedules a wake up for the next one.
+     */
+    private void dispatch() {
+        while (true) {
+            List<SymbolRequest> batch = null;
+            SeriesRequest seriesRequest = null;
+            synchronized (this) {
+                if (queuedSymbols.isEmpty() && series.values().stream().allMatch(ArrayDeque::isEmpty)) {
+                    return;
+                }
+                if (!bucket.tryAcquire()) {
+                    scheduleWakeUp();
+                    return;
+                }
+                calls++;
+                for (RequestPriority priority : RequestPriority.values()) {
+                    SymbolRequest firstSymbol = first(symbols.get(priority));
+                    SeriesRequest firstSeries = series.get(priority).peek();
+                    if (firstSeries != null && (firstSymbol == null || firstSeries.enqueuedAt <= firstSymbol.enqueuedAt)) {
+                        seriesRequest = series.get(priority).poll();
+                        record(seriesRequest);
+                        break;
+                    }
+                    if (firstSymbol != null) {
+                        batch = takeBatch();
+                        break;
+                    }
+                }
+            }
+            if (seriesRequest != null) {
+                send(seriesRequest);
+            } else if (batch != null) {
+                send(batch);
+            }
+        }
+    }
+
+    // Up to symbolsPerCall symbols, by priority then age
+    private List<SymbolRequest> takeBatch() {
+        List<SymbolRequest> batch = new ArrayList<>();
+        for (RequestPriority priority : RequestPriority.values()) {
+            Iterator<SymbolRequest> queued = symbols.get(priority).values().iterator();
+            while (queued.hasNext() && batch.size() < symbolsPerCall) {
+                SymbolRequest request = queued.next();
+                queued.remove();
+                queuedSymbols.remove(request.symbol);
+                record(request);
+                batch.add(request);
+            }
+        }
+        return batch;
+    }
+
+    private void record(Request request) {
+        long wait = System.nanoTime() - request.enqueuedAt;
+        dispatched++;
+        totalWaitNanos += wait;
+        maxWaitNanos = Math.max(maxWaitNanos, wait);
+    }
+
+    private void send(List<SymbolRequest> batch) {
+        Map<String, SymbolRequest> bySymbol = new LinkedHashMap<>();
+        for (SymbolRequest request : batch) {
+            bySymbol.put(request.symbol, request);
+        }
+        call(() -> delegate.getPrices(bySymbol.keySet())).whenComplete((prices, error) -> {
+            if (isRateLimit(error)) {
+                onRateLimit();
+                for (SymbolRequest request : batch) {
+                    if (++request.attempts < MAX_ATTEMPTS) {
+                        requeue(request);
+                    } else {
+                        request.result.complete(Double.NaN);
+                    }
+                }
+                dispatch();
+                return;
+            }
+            if (error != null) {
+                System.err.println("Error fetching prices from " + getName() + ": " + error.getMessage());
+            }
+            for (SymbolRequest request : batch) {
+                request.result.complete(prices != null ? prices.get(request.symbol) : null);
+            }
+        });
+    }
+
+    private void send(SeriesRequest request) {
+        call(() -> delegate.getDailySeries(request.symbol, request.from, request.to)).whenComplete((result, error) -> {
+            if (isRateLimit(error) && ++request.attempts < MAX_ATTEMPTS) {
+                onRateLimit();
+                synchronized (this) {
+                    series.get(request.priority).addFirst(request);
+                }
+                dispatch();
+            } else if (error != null) {
+                request.result.completeExceptionally(error);
+            } else {
+                request.result.complete(result);
+            }
+        });
+    }
+
+    private synchronized void requeue(SymbolRequest request) {
+        SymbolRequest queued = queuedSymbols.get(request.symbol);
+        if (queued != null) {
+            // Asked again meanwhile: answer both with the same call
+            raise(queued, request.priority);
+            queued.result.whenComplete((price, error) -> request.result.complete(price));
+            return;
+        }
+        queuedSymbols.put(request.symbol, request);
+        symbols.get(request.priority).put(request.symbol, request);
+    }
+
+    private synchronized void onRateLimit() {
+        rateLimited++;
+        bucket.drain();
+    }
+
+    private synchronized void scheduleWakeUp() {
+        if (wakeUpScheduled) {
+            return;
+        }
+        wakeUpScheduled = true;
+        timer.schedule(() -> {
+            synchronized (this) {
+                wakeUpScheduled = false;
+            }
+            dispatch();
+        }, Math.max(1, bucket.nanosUntilAvailable()), TimeUnit.NANOSECONDS);
+    }
+
+    private static <T> CompletableFuture<T> call(java.util.function.Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static boolean isRateLimit(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof RateLimitException;
+    }
+
+    private static <T> T first(LinkedHashMap<String, T> map) {
+        Iterator<T> values = map.values().iterator();
+        return values.hasNext() ? values.next() : null;
+    }
+
+    /**
+     * Symbols and history requests waiting for a token.
+     */
+    public synchronized int getQueueDepth() {
+        int depth = queuedSymbols.size();
+        for (ArrayDeque<SeriesRequest> queued : series.values()) {
+            depth += queued.size();
+        }
+        return depth;
+    }
+
+    public synchronized int getQueueDepth(RequestPriority priority) {
+        return symbols.get(priority).size() + series.get(priority).size();
+    }
+
+    /**
+     * Average time requests sent so far spent in the queue.
+     */
+    public synchronized double getAverageWaitMs() {
+        return dispatched == 0 ? 0 : totalWaitNanos / 1e6 / dispatched;
+    }
+
+    public synchronized double getMaxWaitMs() {
+        return maxWaitNanos / 1e6;
+    }
+
+    public synchronized long getCallCount() {
+        return calls;
+    }
+
+    /**
+     * Calls the provider refused for going over its limit.
+     */
+    public synchronized long getRateLimitedCount() {
+        return rateLimited;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[queued=%d, calls=%d, rateLimited=%d, avgWait=%.0fms, maxWait=%.0fms]",
+                getName(), getQueueDepth(), getCallCount(), getRateLimitedCount(), getAverageWaitMs(), getMaxWaitMs());
+    }
+}
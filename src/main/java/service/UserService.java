@@ -3,133 +3,828 @@ package service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import model.Asset;
+import model.Event;
+import model.Portfolio;
+import model.PortfolioSnapshot;
+import model.SavingsAccount;
+import model.Transaction;
 import model.User;
-import util.XORCoder;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.Base64;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Users, their sessions and the persistence of their data.
+ *
+ * Several sessions can be open at the same time (the desktop UI uses a default one, headless
+ * callers open their own and run their work through Session.run/call). Mutations of a user
+ * are serialized by a lock picked from a fixed set of stripes by email, so work on different
+ * users proceeds in parallel; saves snapshot one user at a time under that same lock.
+ * Threads without a session of their own, like the desktop UI, change the data through
+ * modify() so that they take the lock too: a save never encodes a half applied change.
+ */
 public class UserService {
-    private static final String DATA_FILE = "portfolio_data.json";
+    private static final String DATA_DIR = "portfolio_data";
+    // Single file format used before the data was sharded per user, migrated on first start
+    private static final String LEGACY_DATA_FILE = "portfolio_data.json";
+    private static final String LEGACY_JOURNAL_FILE = "portfolio_data.journal";
     private static final String ENCRYPTION_KEY = "portfolio_secret_key_2025";
-    private static UserService instance;
-    private static boolean encryptionEnabled = true;
+    // Number of journal entries after which a user's journal is folded back into its shard
+    private static final int COMPACTION_THRESHOLD = 1000;
+    // Saves are written once no further change arrived for this long (and at most MAX_SAVE_DELAY_MS late)
+    private static final long DEFAULT_SAVE_QUIET_PERIOD_MS = 500;
+    private static final long MAX_SAVE_DELAY_MS = 5000;
+    // Number of per-user locks, a power of two
+    private static final int LOCK_STRIPES = 64;
+    private static volatile UserService instance;
+    private static volatile boolean encryptionEnabled = true;
+
+    /**
+     * A user whose shard has been read, with the persistence state that goes with it.
+     */
+    private static class LoadedUser {
+        final User user;
+        final UserStore.IndexEntry entry;
+        final DataJournal journal;
+        // Guarded by the user's lock
+        long journalSequence;
+        volatile boolean dirty;
+        // User revision and journal sequence of the shard on disk, -1 when unknown
+        long savedRevision = -1;
+        long savedSequence = -1;
+
+        LoadedUser(User user, UserStore.IndexEntry entry, DataJournal journal, long journalSequence) {
+            this.user = user;
+            this.entry = entry;
+            this.journal = journal;
+            this.journalSequence = journalSequence;
+        }
+    }
+
+    /**
+     * A logged in user. Sessions of the same user share its data.
+     */
+    public static class Session {
+        private final UserService service;
+        private final LoadedUser loaded;
+        private volatile boolean open = true;
+
+        private Session(UserService service, LoadedUser loaded) {
+            this.service = service;
+            this.loaded = loaded;
+        }
+
+        public User getUser() {
+            return loaded.user;
+        }
+
+        public String getEmail() {
+            return loaded.user.getEmail();
+        }
 
-    private Map<String, User> users;
-    private User currentUser;
-    private ObjectMapper objectMapper;
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Runs the task as this session: UserService.getCurrentUser() and the record methods
+         * called from it apply to this session's user, and other work on that user waits.
+         */
+        public void run(Runnable task) {
+            call(() -> {
+                task.run();
+                return null;
+            });
+        }
+
+        public <T> T call(Supplier<T> task) {
+            if (!open) {
+                throw new IllegalStateException("session closed");
+            }
+            Session previous = BOUND_SESSION.get();
+            ReentrantLock lock = service.lockFor(getEmail());
+            lock.lock();
+            BOUND_SESSION.set(this);
+            try {
+                return task.get();
+            } finally {
+                if (previous != null) {
+                    BOUND_SESSION.set(previous);
+                } else {
+                    BOUND_SESSION.remove();
+                }
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Schedules a save of the user's data and ends the session.
+         */
+        public void close() {
+            if (open) {
+                open = false;
+                service.markDirty(loaded);
+            }
+        }
+    }
+
+    // Session of the thread running Session.run/call, if any
+    private static final ThreadLocal<Session> BOUND_SESSION = new ThreadLocal<>();
+
+    private final Map<String, UserStore.IndexEntry> index = new ConcurrentHashMap<>();
+    private final Map<String, LoadedUser> users = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // Session of the desktop UI, used by threads not bound to a session
+    private volatile Session defaultSession;
+    private volatile boolean indexDirty;
+    private final Object saveLock = new Object();
+    private final ObjectMapper objectMapper;
+    private final UserStore store;
+    private final SaveScheduler saver;
 
     private UserService() {
-        users = new HashMap<>();
-        objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        objectMapper = createObjectMapper();
+        store = createStore(objectMapper, StorageCodec.fromSystemProperty(objectMapper));
+        saver = new SaveScheduler(this::saveData, DEFAULT_SAVE_QUIET_PERIOD_MS, MAX_SAVE_DELAY_MS);
 
         loadData();
-        if (users.isEmpty()) {
-            users.put("admin@demo.com", new User("Admin User", "admin@demo.com", "123"));
-            users.put("john@example.com", new User("John Doe", "john@example.com", "password123"));
+        // Demo users only for a brand new installation, never over unreadable data
+        if (index.isEmpty() && !store.hasShards()) {
+            addUser(new User("Admin User", "admin@demo.com", "123"));
+            addUser(new User("John Doe", "john@example.com", "password123"));
             saveData();
         }
     }
 
+    static ObjectMapper createObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return mapper;
+    }
+
+    static UserStore createStore(ObjectMapper mapper, StorageCodec codec) {
+        UserStore store = new UserStore(new File(DATA_DIR), mapper, ENCRYPTION_KEY, codec);
+        store.setMemoryMapped(Boolean.getBoolean(UserStore.MMAP_PROPERTY));
+        store.setShardBufferLimit(Integer.getInteger(UserStore.SHARD_BUFFER_PROPERTY, UserStore.DEFAULT_SHARD_BUFFER));
+        return store;
+    }
+
     public static UserService getInstance() {
-        if (instance == null) {
-            instance = new UserService();
+        UserService service = instance;
+        if (service == null) {
+            synchronized (UserService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new UserService();
+                    instance = service;
+                }
+            }
         }
-        return instance;
+        return service;
     }
+
+    /**
+     * Opens a session without touching the desktop one. Returns null on bad credentials.
+     */
+    public static Session openSession(String email, String password) {
+        UserService service = getInstance();
+        UserStore.IndexEntry entry = service.index.get(email);
+        if (entry == null || !entry.getPassword().equals(password)) {
+            return null;
+        }
+        LoadedUser loaded = service.loadUser(email, entry);
+        return loaded != null ? new Session(service, loaded) : null;
+    }
+
     public static boolean loginUser(String email, String password) {
-        User user = getInstance().users.get(email);
-        if (user != null && user.getPassword().equals(password)) {
-            getInstance().currentUser = user;
-            return true;
+        Session session = openSession(email, password);
+        if (session == null) {
+            return false;
         }
-        return false;
+        getInstance().defaultSession = session;
+        return true;
+    }
+
+    /**
+     * Creates the user and opens a session for it. Returns null if the email is taken.
+     */
+    public static Session registerSession(String name, String email, String password) {
+        UserService service = getInstance();
+        LoadedUser loaded = service.addUser(new User(name, email, password));
+        if (loaded == null) {
+            return null;
+        }
+        service.saver.requestSave();
+        return new Session(service, loaded);
     }
 
     public static boolean registerUser(String name, String email, String password) {
-        if (getInstance().users.containsKey(email)) {
+        Session session = registerSession(name, email, password);
+        if (session == null) {
             return false;
         }
-
-        User newUser = new User(name, email, password);
-        getInstance().users.put(email, newUser);
-        getInstance().currentUser = newUser;
-        getInstance().saveData();
+        getInstance().defaultSession = session;
         return true;
     }
 
+    /**
+     * The session bound to the calling thread, or the desktop session.
+     */
+    public static Session getCurrentSession() {
+        Session bound = BOUND_SESSION.get();
+        return bound != null ? bound : getInstance().defaultSession;
+    }
+
     public static User getCurrentUser() {
-        return getInstance().currentUser;
+        Session session = getCurrentSession();
+        return session != null ? session.getUser() : null;
     }
 
     public static void logout() {
-        getInstance().saveData(); // Save before logout
-        getInstance().currentUser = null;
+        UserService service = getInstance();
+        Session session = service.defaultSession;
+        if (session != null) {
+            session.close(); // Save before logout
+            flush();
+            service.defaultSession = null;
+        }
+    }
+
+    private ReentrantLock lockFor(String email) {
+        int h = email.hashCode();
+        return locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Returns null if a user with this email already exists.
+     */
+    private LoadedUser addUser(User user) {
+        UserStore.IndexEntry entry = new UserStore.IndexEntry(user);
+        if (index.putIfAbsent(user.getEmail(), entry) != null) {
+            return null;
+        }
+        indexDirty = true;
+        LoadedUser loaded = new LoadedUser(user, entry, store.openJournal(entry), 0);
+        loaded.dirty = true;
+        users.put(user.getEmail(), loaded);
+        return loaded;
     }
+
+    /**
+     * Only the credentials index is read at startup; user graphs are loaded on login.
+     */
     private void loadData() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
-            try {
-                String content;
-                if (encryptionEnabled) {
-                    byte[] encryptedData = Files.readAllBytes(Paths.get(DATA_FILE));
-                    byte[] decryptedData = XORCoder.codeDecode(encryptedData, ENCRYPTION_KEY.getBytes());
-                    content = new String(decryptedData);
-                } else {
-                    content = new String(Files.readAllBytes(Paths.get(DATA_FILE)));
+        try {
+            if (!store.hasIndex()) {
+                if (store.hasShards()) {
+                    throw new IOException("index file is missing");
                 }
-                
-                UserData data = objectMapper.readValue(content, UserData.class);
-                if (data != null && data.getUsers() != null) {
-                    this.users = data.getUsers();
+                if (new File(LEGACY_DATA_FILE).exists()) {
+                    migrateLegacyFile();
                 }
-                System.out.println("Loaded " + users.size() + " users from " + DATA_FILE);
-            } catch (IOException e) {
-                System.err.println("Failed to load data: " + e.getMessage());
+                return;
+            }
+            index.putAll(store.loadIndex());
+            System.out.println("Loaded index of " + index.size() + " users from " + DATA_DIR);
+        } catch (IOException e) {
+            System.err.println("Failed to load user index, rebuilding it from the shards: " + e.getMessage());
+            index.clear();
+            index.putAll(store.rebuildIndex());
+            indexDirty = true;
+            saveData();
+        }
+    }
+
+    /**
+     * Reads one user's shard and replays its journal. Already loaded users are returned as is.
+     */
+    private LoadedUser loadUser(String email, UserStore.IndexEntry entry) {
+        LoadedUser loaded = users.get(email);
+        if (loaded != null) {
+            return loaded;
+        }
+        // Two sessions logging in the same user at once load it only once
+        ReentrantLock lock = lockFor(email);
+        lock.lock();
+        try {
+            loaded = users.get(email);
+            if (loaded != null) {
+                return loaded;
+            }
+            UserStore.ShardData data = store.loadShard(entry);
+            if (data == null || data.getUser() == null) {
+                System.err.println("Missing data shard for " + email);
+                return null;
+            }
+            loaded = new LoadedUser(data.getUser(), entry, store.openJournal(entry), data.getJournalSequence());
+            if (replayJournal(loaded) == 0) {
+                loaded.savedRevision = loaded.user.getRevision();
+                loaded.savedSequence = loaded.journalSequence;
+            }
+            if (store.needsMigration(entry)) {
+                // Written in the format selected at startup on the next save
+                loaded.savedRevision = -1;
+                markDirty(loaded);
+            }
+            users.put(email, loaded);
+            return loaded;
+        } catch (IOException e) {
+            System.err.println("Failed to load data for " + email + ": " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the journal entries written after the shard was last saved. Returns how many.
+     */
+    private int replayJournal(LoadedUser loaded) throws IOException {
+        List<DataJournal.Entry> entries = loaded.journal.readAll(store.journalKey());
+        int applied = 0;
+        for (DataJournal.Entry entry : entries) {
+            // Entries already folded into the shard (crash between compaction and truncate)
+            if (entry.getSequence() <= loaded.journalSequence) {
+                continue;
+            }
+            replayEntry(loaded.user, entry);
+            loaded.journalSequence = entry.getSequence();
+            applied++;
+        }
+        if (applied > 0) {
+            System.out.println("Replayed " + applied + " journal entries for " + loaded.user.getEmail());
+        }
+        return applied;
+    }
+
+    /**
+     * Splits the old single data file (and its journal) into one shard per user.
+     */
+    private void migrateLegacyFile() throws IOException {
+        UserData data = store.readLegacy(new File(LEGACY_DATA_FILE), UserData.class);
+        Map<String, User> legacyUsers = data != null && data.getUsers() != null ? data.getUsers() : new HashMap<>();
+        long baseSequence = data != null ? data.getJournalSequence() : 0;
+
+        DataJournal legacyJournal = new DataJournal(new File(LEGACY_JOURNAL_FILE), objectMapper);
+        for (DataJournal.Entry entry : legacyJournal.readAll(store.journalKey())) {
+            User user = legacyUsers.get(entry.getEmail());
+            if (user != null && entry.getSequence() > baseSequence) {
+                replayEntry(user, entry);
+            }
+        }
+
+        for (User user : legacyUsers.values()) {
+            addUser(user);
+        }
+        saveData();
+        System.out.println("Migrated " + legacyUsers.size() + " users from " + LEGACY_DATA_FILE + " to " + DATA_DIR);
+    }
+
+    private void replayEntry(User user, DataJournal.Entry entry) {
+        if (!applyEntry(user, entry)) {
+            System.err.println("Skipping journal entry " + entry.getSequence() + " (" + entry.getOperation()
+                    + ") of " + user.getEmail() + ": what it changes is not in the data");
+        }
+    }
+
+    /**
+     * Applies one journal entry. Returns false when the portfolio, account or event it refers
+     * to does not exist, so nothing could be applied.
+     */
+    private boolean applyEntry(User user, DataJournal.Entry entry) {
+        Portfolio portfolio = user.getPortfolioById(entry.getPortfolioId());
+
+        switch (entry.getOperation()) {
+            case ASSET_ADDED:
+                if (portfolio == null) {
+                    return false;
+                }
+                putAsset(portfolio, entry.getAsset());
+                return true;
+            case TRANSACTION_RECORDED:
+                if (entry.getAccountName() != null) {
+                    SavingsAccount account = findAccount(user, entry.getAccountName());
+                    if (account == null) {
+                        return false;
+                    }
+                    account.getTransactions().add(entry.getTransaction());
+                    account.setBalance(entry.getBalance());
+                    return true;
+                }
+                if (portfolio == null) {
+                    return false;
+                }
+                portfolio.getTransactionHistory().add(entry.getTransaction());
+                putAsset(portfolio, entry.getAsset());
+                return true;
+            case EVENT_CREATED:
+                if (entry.getEvent().isGlobal()) {
+                    user.addGlobalEvent(entry.getEvent());
+                    return true;
+                }
+                if (portfolio == null) {
+                    return false;
+                }
+                portfolio.addEvent(entry.getEvent());
+                return true;
+            case SNAPSHOT_TAKEN:
+                if (portfolio == null) {
+                    return false;
+                }
+                portfolio.getSnapshots().add(entry.getSnapshot());
+                return true;
+            case PORTFOLIO_ADDED:
+                if (user.getPortfolioById(entry.getPortfolio().getId()) == null) {
+                    user.addPortfolio(entry.getPortfolio());
+                }
+                return true;
+            case PORTFOLIO_REMOVED:
+                if (portfolio == null) {
+                    return false;
+                }
+                user.removePortfolio(portfolio);
+                return true;
+            case ASSET_REMOVED:
+                if (portfolio == null) {
+                    return false;
+                }
+                portfolio.removeAsset(entry.getAsset());
+                return true;
+            case ACCOUNT_ADDED:
+                if (findAccount(user, entry.getAccount().getName()) == null) {
+                    user.getSavingsAccounts().add(entry.getAccount());
+                }
+                return true;
+            case ACCOUNT_REMOVED:
+                return user.getSavingsAccounts().removeIf(a -> a.getName().equals(entry.getAccountName()));
+            case EVENT_REMOVED:
+                String eventId = entry.getEvent().getId();
+                boolean removed = user.getGlobalEvents().removeIf(e -> e.getId().equals(eventId));
+                for (Portfolio p : user.getPortfolios()) {
+                    removed |= p.getEvents().removeIf(e -> e.getId().equals(eventId));
+                }
+                return removed;
+            default:
+                return false;
+        }
+    }
+
+    private static SavingsAccount findAccount(User user, String name) {
+        for (SavingsAccount account : user.getSavingsAccounts()) {
+            if (account.getName().equals(name)) {
+                return account;
             }
         }
+        return null;
+    }
+
+    /**
+     * Journal entries carry the resulting state of an asset, so replay replaces rather than merges.
+     */
+    private static void putAsset(Portfolio portfolio, Asset asset) {
+        if (asset == null) {
+            return;
+        }
+        portfolio.putAsset(asset);
     }
 
+    /**
+     * Writes the shards of dirty users (compacting their journals) and the index if it changed.
+     * Runs on the saver thread, except at startup; concurrent calls are serialized so two
+     * writers never race on the same file.
+     */
     public void saveData() {
+        synchronized (saveLock) {
+            saveDirty();
+        }
+    }
+
+    private void saveDirty() {
+        List<LoadedUser> toSave = new ArrayList<>();
+        Map<String, UserStore.IndexEntry> indexCopy = null;
+        for (LoadedUser loaded : users.values()) {
+            if (loaded.dirty) {
+                toSave.add(loaded);
+            }
+        }
+        int saved = 0;
+        for (LoadedUser loaded : toSave) {
+            try {
+                if (saveUser(loaded)) {
+                    saved++;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Failed to save data for " + loaded.user.getEmail() + ": " + e.getMessage());
+                markDirty(loaded);
+            }
+        }
+        if (indexDirty) {
+            // Cleared before copying: a change made meanwhile sets it again for the next save
+            indexDirty = false;
+            indexCopy = new HashMap<>(index);
+        }
+        if (indexCopy != null) {
+            try {
+                store.saveIndex(indexCopy);
+            } catch (IOException e) {
+                System.err.println("Failed to save user index: " + e.getMessage());
+                indexDirty = true;
+            }
+        }
+        if (saved > 0) {
+            System.out.println("Saved " + saved + " user shard(s) to " + DATA_DIR);
+        }
+    }
+
+    /**
+     * The shard is encoded in memory under the user's lock, so it is a consistent snapshot of
+     * the user, and written to disk after the lock is released: a change on the UI thread waits
+     * for the encoding at most, never for the disk. Shards above the store's buffer limit are
+     * the exception, streamed to their temporary file under the lock (see UserStore.prepareShard).
+     * Returns false without writing when nothing changed since the last save.
+     */
+    private boolean saveUser(LoadedUser loaded) throws IOException {
+        ReentrantLock lock = lockFor(loaded.user.getEmail());
+        long captured;
+        long revision;
+        UserStore.PendingShard shard;
+        lock.lock();
         try {
-            UserData data = new UserData();
-            data.setUsers(users);
-            String jsonContent = objectMapper.writeValueAsString(data);
-            
-            if (encryptionEnabled) {
-                byte[] encryptedData = XORCoder.codeDecode(jsonContent.getBytes(), ENCRYPTION_KEY.getBytes());
-                Files.write(Paths.get(DATA_FILE), encryptedData);
+            captured = loaded.journalSequence;
+            revision = loaded.user.getRevision();
+            loaded.dirty = false;
+            if (revision == loaded.savedRevision && captured == loaded.savedSequence) {
+                return false;
+            }
+            shard = store.prepareShard(loaded.entry, new UserStore.ShardData(loaded.user, captured));
+            if (loaded.entry.update(loaded.user)) {
+                indexDirty = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        shard.commit();
+        lock.lock();
+        try {
+            loaded.savedRevision = revision;
+            loaded.savedSequence = captured;
+            if (loaded.journalSequence == captured) {
+                loaded.journal.truncate();
             } else {
-                Files.write(Paths.get(DATA_FILE), jsonContent.getBytes());
+                // Entries were journaled while writing; keep them and write again shortly
+                markDirty(loaded);
             }
-            
-            System.out.println("Saved " + users.size() + " users to " + DATA_FILE);
-        } catch (IOException e) {
-            System.err.println("Failed to save data: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private void markDirty(LoadedUser loaded) {
+        loaded.dirty = true;
+        saver.requestSave();
+    }
+
+    /**
+     * Appends one mutation of the current user to its journal. The entry is encoded on the
+     * caller's thread and written on the saver thread; a long journal triggers a compaction.
+     */
+    private void appendEntry(DataJournal.Entry entry) {
+        Session session = getCurrentSession();
+        if (session == null) {
+            return;
+        }
+        LoadedUser loaded = session.loaded;
+        // Sequence numbers and queue order must match, hence encoding and queuing under the lock
+        ReentrantLock lock = lockFor(loaded.user.getEmail());
+        lock.lock();
+        try {
+            byte[] record;
+            try {
+                entry.setSequence(loaded.journalSequence + 1);
+                record = loaded.journal.encode(entry, store.journalKey());
+            } catch (IOException e) {
+                System.err.println("Failed to encode journal entry: " + e.getMessage());
+                markDirty(loaded);
+                return;
+            }
+            loaded.journalSequence = entry.getSequence();
+            queueAppend(loaded, record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void queueAppend(LoadedUser loaded, byte[] record) {
+        saver.execute(() -> {
+            try {
+                loaded.journal.appendEncoded(record);
+                if (loaded.journal.size() >= COMPACTION_THRESHOLD) {
+                    markDirty(loaded);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to append journal entry: " + e.getMessage());
+                markDirty(loaded);
+            }
+        });
+    }
+
+    private static DataJournal.Entry newEntry(DataJournal.Operation operation) {
+        User user = getCurrentUser();
+        return new DataJournal.Entry(operation, user != null ? user.getEmail() : null);
+    }
+
+    /**
+     * Journals an asset added to (or merged into) a portfolio of the current user.
+     */
+    public static void recordAssetAdded(Portfolio portfolio, Asset asset) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.ASSET_ADDED);
+        entry.setPortfolioId(portfolio.getId());
+        entry.setAsset(asset);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals a portfolio transaction together with the resulting holding (null if unchanged).
+     */
+    public static void recordTransaction(Portfolio portfolio, Transaction tx, Asset asset) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.TRANSACTION_RECORDED);
+        entry.setPortfolioId(portfolio.getId());
+        entry.setTransaction(tx);
+        entry.setAsset(asset);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals a savings transaction together with the resulting balance.
+     */
+    public static void recordSavingsTransaction(SavingsAccount account, Transaction tx) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.TRANSACTION_RECORDED);
+        entry.setAccountName(account.getName());
+        entry.setBalance(account.getBalance());
+        entry.setTransaction(tx);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals an event already attached to the current user or one of its portfolios.
+     */
+    public static void recordEvent(Event event) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.EVENT_CREATED);
+        entry.setPortfolioId(event.getPortfolioId());
+        entry.setEvent(event);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals a portfolio added to the current user, with everything it already holds.
+     */
+    public static void recordPortfolioAdded(Portfolio portfolio) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.PORTFOLIO_ADDED);
+        entry.setPortfolio(portfolio);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals a portfolio removed from the current user.
+     */
+    public static void recordPortfolioRemoved(Portfolio portfolio) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.PORTFOLIO_REMOVED);
+        entry.setPortfolioId(portfolio.getId());
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals the holding of a symbol removed from a portfolio.
+     */
+    public static void recordAssetRemoved(Portfolio portfolio, Asset asset) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.ASSET_REMOVED);
+        entry.setPortfolioId(portfolio.getId());
+        entry.setAsset(asset);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals a savings account added to the current user.
+     */
+    public static void recordAccountAdded(SavingsAccount account) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.ACCOUNT_ADDED);
+        entry.setAccount(account);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals a savings account removed from the current user.
+     */
+    public static void recordAccountRemoved(SavingsAccount account) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.ACCOUNT_REMOVED);
+        entry.setAccountName(account.getName());
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Journals an event removed from the current user or its portfolios.
+     */
+    public static void recordEventRemoved(Event event) {
+        DataJournal.Entry entry = newEntry(DataJournal.Operation.EVENT_REMOVED);
+        entry.setEvent(event);
+        getInstance().appendEntry(entry);
+    }
+
+    /**
+     * Takes a snapshot of the portfolio value and journals it.
+     */
+    public static PortfolioSnapshot recordSnapshot(Portfolio portfolio) {
+        return modify(() -> {
+            PortfolioSnapshot snapshot = portfolio.recordSnapshot();
+            DataJournal.Entry entry = newEntry(DataJournal.Operation.SNAPSHOT_TAKEN);
+            entry.setPortfolioId(portfolio.getId());
+            entry.setSnapshot(snapshot);
+            getInstance().appendEntry(entry);
+            return snapshot;
+        });
+    }
+
+    /**
+     * Changes the current user's data under its lock, as the current session. Every change
+     * made outside Session.run/call must go through here, or a save running meanwhile could
+     * write it half done. Runs the task as is when nobody is logged in.
+     */
+    public static void modify(Runnable task) {
+        Session session = getCurrentSession();
+        if (session != null) {
+            session.run(task);
+        } else {
+            task.run();
         }
     }
 
+    public static <T> T modify(Supplier<T> task) {
+        Session session = getCurrentSession();
+        return session != null ? session.call(task) : task.get();
+    }
+
+    /**
+     * Schedules a save of the current user's shard; other users are left untouched.
+     * Returns immediately, bursts of calls are coalesced into one background write.
+     */
     public static void save() {
-        getInstance().saveData();
+        Session session = getCurrentSession();
+        if (session != null) {
+            getInstance().markDirty(session.loaded);
+        }
+    }
+
+    /**
+     * Writes everything pending and waits until it is on disk.
+     * Not allowed inside Session.run/call: the save would wait for the lock held by the caller.
+     */
+    public static void flush() {
+        if (BOUND_SESSION.get() != null) {
+            throw new IllegalStateException("flush() called from a session task");
+        }
+        getInstance().saver.flush();
+    }
+
+    /**
+     * Flushes pending writes and stops the saver thread, called when the application exits.
+     */
+    public static void shutdown() {
+        UserService service = instance;
+        if (service != null) {
+            service.saver.shutdown();
+        }
+    }
+
+    public static void setSaveQuietPeriod(long quietPeriodMs) {
+        getInstance().saver.setQuietPeriod(quietPeriodMs);
     }
 
     public static String getCurrentUserName() {
-        return getInstance().currentUser != null ? getInstance().currentUser.getName() : "Guest";
+        User user = getCurrentUser();
+        return user != null ? user.getName() : "Guest";
     }
 
     public static String getCurrentUserEmail() {
-        return getInstance().currentUser != null ? getInstance().currentUser.getEmail() : "";
+        User user = getCurrentUser();
+        return user != null ? user.getEmail() : "";
     }
 
     public static boolean isLoggedIn() {
-        return getInstance().currentUser != null;
+        return getCurrentSession() != null;
     }
 
     public static void setEncryptionEnabled(boolean enabled) {
@@ -141,6 +836,8 @@ public class UserService {
     }
     public static class UserData {
         private Map<String, User> users;
+        // Sequence of the last journal entry included in this file
+        private long journalSequence;
 
         public Map<String, User> getUsers() {
             return users;
@@ -149,5 +846,13 @@ public class UserService {
         public void setUsers(Map<String, User> users) {
             this.users = users;
         }
+
+        public long getJournalSequence() {
+            return journalSequence;
+        }
+
+        public void setJournalSequence(long journalSequence) {
+            this.journalSequence = journalSequence;
+        }
     }
 }
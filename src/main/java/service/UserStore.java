@@ -0,0 +1,404 @@
+package service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import model.User;
+import util.AtomicFiles;
+import util.MappedInputStream;
+import util.XORCoder;
+import util.XORInputStream;
+import util.XOROutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * File layout of the user data: one shard file (plus its journal) per user and a small
+ * credentials index, so a login only has to read the shard of the user logging in.
+ *
+ * portfolio_data/users.idx        email -> name, password, shard id
+ * portfolio_data/[shard].json     the user graph (.bin with the binary codec)
+ * portfolio_data/[shard].journal  mutations appended since the shard was last written
+ *
+ * Shards are written with the selected StorageCodec; shards found in another codec's format
+ * are still read and replaced by the selected format on their next save.
+ *
+ * With -Dportfolio.storage.mmap=true files are read through memory mappings instead of heap
+ * buffers (see AtomicFiles.readMapped), meant for read-mostly instances such as reporting.
+ *
+ * A shard being saved is encoded in memory up to -Dportfolio.storage.shardBuffer bytes
+ * (8 MB by default); a larger one is streamed to its temporary file instead.
+ */
+public class UserStore {
+    /**
+     * System property enabling memory mapped loading.
+     */
+    public static final String MMAP_PROPERTY = "portfolio.storage.mmap";
+    /**
+     * System property with the largest shard, in bytes, encoded in memory for a save.
+     */
+    public static final String SHARD_BUFFER_PROPERTY = "portfolio.storage.shardBuffer";
+    public static final int DEFAULT_SHARD_BUFFER = 8 * 1024 * 1024;
+
+    private static final String INDEX_FILE = "users.idx";
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class IndexEntry {
+        private String name;
+        private String password;
+        private String shard;
+
+        public IndexEntry() {
+        }
+
+        public IndexEntry(User user) {
+            this.shard = UUID.randomUUID().toString();
+            update(user);
+        }
+
+        /**
+         * Copies the fields the index mirrors from the user. Returns true if something changed.
+         */
+        public boolean update(User user) {
+            boolean changed = !equalsOrNull(name, user.getName()) || !equalsOrNull(password, user.getPassword());
+            this.name = user.getName();
+            this.password = user.getPassword();
+            return changed;
+        }
+
+        private static boolean equalsOrNull(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public String getShard() { return shard; }
+        public void setShard(String shard) { this.shard = shard; }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class CredentialsIndex {
+        private Map<String, IndexEntry> users = new HashMap<>();
+
+        public Map<String, IndexEntry> getUsers() { return users; }
+        public void setUsers(Map<String, IndexEntry> users) { this.users = users; }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ShardData {
+        private User user;
+        // Sequence of the last journal entry included in this shard
+        private long journalSequence;
+
+        public ShardData() {
+        }
+
+        public ShardData(User user, long journalSequence) {
+            this.user = user;
+            this.journalSequence = journalSequence;
+        }
+
+        public User getUser() { return user; }
+        public void setUser(User user) { this.user = user; }
+
+        public long getJournalSequence() { return journalSequence; }
+        public void setJournalSequence(long journalSequence) { this.journalSequence = journalSequence; }
+    }
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final byte[] secret;
+    private final XORCoder.Key key;
+    private final StorageCodec codec;
+    private final List<StorageCodec> knownCodecs;
+    private boolean memoryMapped;
+    private int shardBufferLimit = DEFAULT_SHARD_BUFFER;
+
+    public UserStore(File directory, ObjectMapper objectMapper, String secret, StorageCodec codec) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.secret = secret.getBytes();
+        this.key = new XORCoder.Key(this.secret);
+        this.codec = codec;
+        this.knownCodecs = List.of(codec,
+                "json".equals(codec.getName()) ? new BinaryStorageCodec() : new JsonStorageCodec(objectMapper));
+    }
+
+    public StorageCodec getCodec() {
+        return codec;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public int getShardBufferLimit() {
+        return shardBufferLimit;
+    }
+
+    public void setShardBufferLimit(int shardBufferLimit) {
+        this.shardBufferLimit = shardBufferLimit;
+    }
+
+    public boolean hasIndex() {
+        File index = new File(directory, INDEX_FILE);
+        return index.exists() || AtomicFiles.backupOf(index.toPath()).toFile().exists();
+    }
+
+    public boolean hasShards() {
+        File[] shards = directory.listFiles((dir, name) -> shardId(name.replace(".bak", "")) != null);
+        return shards != null && shards.length > 0;
+    }
+
+    public Map<String, IndexEntry> loadIndex() throws IOException {
+        CredentialsIndex index = AtomicFiles.readWithFallback(
+                new File(directory, INDEX_FILE).toPath(),
+                in -> objectMapper.readValue(decode(in), CredentialsIndex.class), memoryMapped);
+        return index != null && index.getUsers() != null ? index.getUsers() : new HashMap<>();
+    }
+
+    /**
+     * Recreates the credentials index from the shards, used when the index itself is lost.
+     */
+    public Map<String, IndexEntry> rebuildIndex() {
+        Map<String, IndexEntry> users = new HashMap<>();
+        File[] shards = directory.listFiles((dir, name) -> shardId(name) != null);
+        if (shards == null) {
+            return users;
+        }
+        for (File file : shards) {
+            IndexEntry entry = new IndexEntry();
+            entry.setShard(shardId(file.getName()));
+            if (users.values().stream().anyMatch(e -> e.getShard().equals(entry.getShard()))) {
+                continue; // same shard in two formats
+            }
+            try {
+                ShardData data = loadShard(entry);
+                if (data != null && data.getUser() != null) {
+                    entry.update(data.getUser());
+                    users.put(data.getUser().getEmail(), entry);
+                }
+            } catch (IOException e) {
+                System.err.println("Skipping unreadable shard " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return users;
+    }
+
+    public void saveIndex(Map<String, IndexEntry> users) throws IOException {
+        CredentialsIndex index = new CredentialsIndex();
+        index.setUsers(users);
+        write(new File(directory, INDEX_FILE), index);
+    }
+
+    /**
+     * Reads a shard in the selected format, or in any other known format if that is all there is.
+     */
+    public ShardData loadShard(IndexEntry entry) throws IOException {
+        for (StorageCodec candidate : knownCodecs) {
+            Path file = shardFile(entry, candidate);
+            if (Files.exists(file) || Files.exists(AtomicFiles.backupOf(file))) {
+                return AtomicFiles.readWithFallback(file, in -> candidate.read(decode(in)), memoryMapped);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * True when the shard only exists in another codec's format and should be rewritten.
+     */
+    public boolean needsMigration(IndexEntry entry) {
+        Path file = shardFile(entry, codec);
+        return !Files.exists(file) && !Files.exists(AtomicFiles.backupOf(file));
+    }
+
+    public void saveShard(IndexEntry entry, ShardData data) throws IOException {
+        prepareShard(entry, data).commit();
+    }
+
+    /**
+     * Encodes the shard, so the caller can snapshot a user under its lock and leave the disk to
+     * commit(). Up to the buffer limit the shard is encoded in memory and nothing touches the
+     * disk before commit(); a larger shard is streamed to its temporary file instead of being
+     * held whole in memory, and only then does the caller wait for the writing.
+     */
+    public PendingShard prepareShard(IndexEntry entry, ShardData data) throws IOException {
+        BoundedBuffer buffer = new BoundedBuffer(shardBufferLimit);
+        try {
+            OutputStream encoded = encode(buffer);
+            codec.write(data, encoded);
+            encoded.close();
+            return new PendingShard(entry, buffer, null);
+        } catch (IOException | RuntimeException e) {
+            // Thrown by the buffer, maybe wrapped by the codec, when the shard outgrew it
+            if (!buffer.isFull()) {
+                throw e;
+            }
+        }
+        ensureDirectory();
+        AtomicFiles.PendingWrite write = AtomicFiles.prepare(shardFile(entry, codec), out -> {
+            OutputStream encoded = encode(out);
+            codec.write(data, encoded);
+            encoded.close();
+        });
+        return new PendingShard(entry, null, write);
+    }
+
+    /**
+     * A shard encoded by prepareShard, in memory or in its temporary file, not on disk for good
+     * until committed.
+     */
+    public class PendingShard {
+        private final IndexEntry entry;
+        private final BoundedBuffer buffer;
+        private final AtomicFiles.PendingWrite write;
+
+        private PendingShard(IndexEntry entry, BoundedBuffer buffer, AtomicFiles.PendingWrite write) {
+            this.entry = entry;
+            this.buffer = buffer;
+            this.write = write;
+        }
+
+        public void commit() throws IOException {
+            if (write != null) {
+                write.commit();
+            } else {
+                ensureDirectory();
+                AtomicFiles.write(shardFile(entry, codec), buffer::writeTo);
+            }
+            // Drop copies left in another format once the selected one is safely on disk
+            for (StorageCodec other : knownCodecs) {
+                if (other != codec) {
+                    Path file = shardFile(entry, other);
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(AtomicFiles.backupOf(file));
+                }
+            }
+        }
+    }
+
+    /**
+     * In-memory output refusing to grow past its limit; the write that would exceed it fails.
+     */
+    private static class BoundedBuffer extends ByteArrayOutputStream {
+        private final int limit;
+        private boolean full;
+
+        BoundedBuffer(int limit) {
+            super(Math.min(limit, IO_BUFFER_SIZE));
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            reserve(1);
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            reserve(len);
+            super.write(b, off, len);
+        }
+
+        boolean isFull() {
+            return full;
+        }
+
+        private void reserve(int len) {
+            if (count + len > limit) {
+                full = true;
+                throw new UncheckedIOException(new IOException("Shard larger than " + limit + " bytes"));
+            }
+        }
+    }
+
+    public DataJournal openJournal(IndexEntry entry) {
+        return new DataJournal(new File(directory, entry.getShard() + ".journal"), objectMapper);
+    }
+
+    /**
+     * Reads a data file in the pre-shard single file format.
+     */
+    public <T> T readLegacy(File file, Class<T> type) throws IOException {
+        if (memoryMapped) {
+            return AtomicFiles.readMapped(file.toPath(), in -> objectMapper.readValue(decode(in), type));
+        }
+        try (InputStream in = openInput(file)) {
+            return objectMapper.readValue(in, type);
+        }
+    }
+
+    /**
+     * Key for journal records, null when encryption is disabled.
+     */
+    public byte[] journalKey() {
+        return UserService.isEncryptionEnabled() ? secret : null;
+    }
+
+    private Path shardFile(IndexEntry entry, StorageCodec format) {
+        return new File(directory, entry.getShard() + format.getExtension()).toPath();
+    }
+
+    private String shardId(String fileName) {
+        for (StorageCodec format : knownCodecs) {
+            if (fileName.endsWith(format.getExtension())) {
+                return fileName.substring(0, fileName.length() - format.getExtension().length());
+            }
+        }
+        return null;
+    }
+
+    private void ensureDirectory() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create data directory " + directory);
+        }
+    }
+
+    /**
+     * Replaces the file atomically; a crash leaves either the old or the new version in place.
+     */
+    private void write(File file, Object value) throws IOException {
+        ensureDirectory();
+        AtomicFiles.write(file.toPath(), out -> objectMapper.writeValue(encode(out), value));
+    }
+
+    private InputStream openInput(File file) throws IOException {
+        return decode(new FileInputStream(file));
+    }
+
+    private InputStream decode(InputStream in) {
+        // A mapping is already in memory, buffering it would only add a copy
+        if (!(in instanceof MappedInputStream)) {
+            in = new BufferedInputStream(in, IO_BUFFER_SIZE);
+        }
+        return UserService.isEncryptionEnabled() ? new XORInputStream(in, key) : in;
+    }
+
+    private OutputStream encode(OutputStream out) {
+        out = new BufferedOutputStream(out, IO_BUFFER_SIZE);
+        return UserService.isEncryptionEnabled() ? new XOROutputStream(out, key) : out;
+    }
+}
@@ -6,6 +6,7 @@ import model.Portfolio;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -74,9 +75,17 @@ public class WalletMonitoringService {
     }
 
     private void updateWalletBalance(String blockchain, String address) {
+        // The scheduler thread is released while prices are fetched
+        fetchWalletBalance(blockchain, address)
+                .thenAccept(newSnapshot -> applySnapshot(blockchain, address, newSnapshot))
+                .exceptionally(e -> {
+                    System.err.println("Error updating wallet " + address + ": " + e.getMessage());
+                    return null;
+                });
+    }
+
+    private void applySnapshot(String blockchain, String address, WalletSnapshot newSnapshot) {
         try {
-            WalletSnapshot newSnapshot = fetchWalletBalance(blockchain, address);
-            
             String key = blockchain + ":" + address;
             WalletSnapshot oldSnapshot = walletSnapshots.get(key);
             
@@ -96,24 +105,27 @@ public class WalletMonitoringService {
         }
     }
 
-    private WalletSnapshot fetchWalletBalance(String blockchain, String address) {
-        WalletSnapshot snapshot = new WalletSnapshot(address, blockchain);
+    private CompletableFuture<WalletSnapshot> fetchWalletBalance(String blockchain, String address) {
         ApiService apiService = new ApiService();
-
+        apiService.setPriority(RequestPriority.BACKGROUND);
         String[] tokens = {"BTC", "ETH", "BNB", "SOL", "ADA", "XRP"};
-        Random random = new Random();
-
-        for (String token : tokens) {
-            if (random.nextDouble() > 0.4) {
-                double balance = random.nextDouble() * 100;
-                double price = apiService.getCurrentPrice(token);
-                snapshot.balances.put(token, balance);
-                snapshot.totalUsdValue += balance * price;
+
+        return apiService.getCurrentPricesAsync(Arrays.asList(tokens)).thenApply(prices -> {
+            WalletSnapshot snapshot = new WalletSnapshot(address, blockchain);
+            Random random = new Random();
+
+            for (String token : tokens) {
+                if (random.nextDouble() > 0.4) {
+                    double balance = random.nextDouble() * 100;
+                    double price = prices.get(token);
+                    snapshot.balances.put(token, balance);
+                    snapshot.totalUsdValue += balance * price;
+                }
             }
-        }
 
-        snapshot.timestamp = LocalDateTime.now();
-        return snapshot;
+            snapshot.timestamp = LocalDateTime.now();
+            return snapshot;
+        });
     }
 
     private List<BalanceChange> compareSnapshots(WalletSnapshot oldSnapshot, WalletSnapshot newSnapshot) {
@@ -81,18 +81,23 @@ public class WhaleMonitoringService {
     private void checkAddressTransactions(String blockchain, String address, String portfolioId) {
         try {
             List<WhaleTransaction> transactions = fetchTransactionsForAddress(blockchain, address);
-            
-            for (WhaleTransaction tx : transactions) {
-                // Check if transaction amount exceeds threshold
-                double threshold = getThreshold(tx.tokenSymbol);
-                double usdValue = tx.amount * getTokenPrice(tx.tokenSymbol);
-                
-                if (usdValue >= threshold) {
-                    WhaleAlert alert = createAlert(tx, blockchain, usdValue, portfolioId != null);
-                    activeAlerts.add(alert);
-                    System.out.println("🐋 " + alert);
+            // The scheduler thread is released while prices are fetched
+            getTokenPrices(transactions).thenAccept(prices -> {
+                for (WhaleTransaction tx : transactions) {
+                    // Check if transaction amount exceeds threshold
+                    double threshold = getThreshold(tx.tokenSymbol);
+                    double usdValue = tx.amount * prices.get(tx.tokenSymbol.toUpperCase());
+
+                    if (usdValue >= threshold) {
+                        WhaleAlert alert = createAlert(tx, blockchain, usdValue, portfolioId != null);
+                        activeAlerts.add(alert);
+                        System.out.println("🐋 " + alert);
+                    }
                 }
-            }
+            }).exceptionally(e -> {
+                System.err.println("Error checking address " + address + ": " + e.getMessage());
+                return null;
+            });
         } catch (Exception e) {
             System.err.println("Error checking address " + address + ": " + e.getMessage());
         }
@@ -126,9 +131,17 @@ public class WhaleMonitoringService {
         return transactions;
     }
 
-    private double getTokenPrice(String token) {
+    private CompletableFuture<Map<String, Double>> getTokenPrices(List<WhaleTransaction> transactions) {
+        Set<String> tokens = new HashSet<>();
+        SymbolRegistry registry = SymbolRegistry.getInstance();
+        for (WhaleTransaction tx : transactions) {
+            tokens.add(tx.tokenSymbol);
+            // Seen on a blockchain: priced on CoinGecko, even if not in the registry yet
+            registry.assume(tx.tokenSymbol, AssetType.CRYPTO);
+        }
         ApiService apiService = new ApiService();
-        return apiService.getCurrentPrice(token);
+        apiService.setPriority(RequestPriority.BACKGROUND);
+        return apiService.getCurrentPricesAsync(tokens);
     }
 
     private WhaleAlert createAlert(WhaleTransaction tx, String blockchain, double usdValue, boolean relatedToPortfolio) {
@@ -0,0 +1,303 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe file replacement.
+ *
+ * A file is written to [name].tmp, followed by a trailer (magic, payload length, CRC32 of the
+ * payload), fsync'd and then renamed over the target. The previous version is kept as
+ * [name].bak, so a reader that finds a damaged file can fall back to the last good generation.
+ */
+public class AtomicFiles {
+
+    private static final int MAGIC = 0x50464331; // "PFC1"
+    private static final int TRAILER_SIZE = 4 + 8 + 8;
+
+    public interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public interface StreamReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    public static Path backupOf(Path target) {
+        return target.resolveSibling(target.getFileName() + ".bak");
+    }
+
+    public static void write(Path target, StreamWriter writer) throws IOException {
+        prepare(target, writer).commit();
+    }
+
+    /**
+     * First half of write: the new version is written to [name].tmp with its trailer, but not
+     * synced nor put in place until commit(). This lets a caller produce the content while
+     * holding a lock and leave the slow part, the fsync, to after releasing it.
+     */
+    public static PendingWrite prepare(Path target, StreamWriter writer) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            CRC32 crc = new CRC32();
+            CountingOutputStream payload = new CountingOutputStream(new CheckedOutputStream(file, crc));
+            writer.write(payload);
+            payload.flush();
+
+            DataOutputStream trailer = new DataOutputStream(file);
+            trailer.writeInt(MAGIC);
+            trailer.writeLong(payload.count);
+            trailer.writeLong(crc.getValue());
+            trailer.flush();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return new PendingWrite(target, tmp);
+    }
+
+    /**
+     * A new version written by prepare, not durable and not in place yet.
+     */
+    public static class PendingWrite {
+        private final Path target;
+        private final Path tmp;
+
+        private PendingWrite(Path target, Path tmp) {
+            this.target = target;
+            this.tmp = tmp;
+        }
+
+        /**
+         * Syncs the new version and renames it over the target, keeping the old one as backup.
+         */
+        public void commit() throws IOException {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            if (Files.exists(target)) {
+                Files.move(target, backupOf(target), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(target.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Reads the target, or its previous generation when the target is missing or damaged.
+     * Returns null when neither can be read.
+     */
+    public static <T> T readWithFallback(Path target, StreamReader<T> reader) throws IOException {
+        return readWithFallback(target, reader, false);
+    }
+
+    /**
+     * Same as readWithFallback(target, reader), memory mapping the files when mapped is true.
+     */
+    public static <T> T readWithFallback(Path target, StreamReader<T> reader, boolean mapped) throws IOException {
+        IOException failure = null;
+        for (Path candidate : new Path[] { target, backupOf(target) }) {
+            if (!Files.exists(candidate)) {
+                continue;
+            }
+            try {
+                T value = mapped ? readMapped(candidate, reader) : read(candidate, reader);
+                if (candidate != target) {
+                    System.err.println("Recovered " + target.getFileName() + " from its previous generation");
+                }
+                return value;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Cannot read " + candidate.getFileName() + ": " + e.getMessage());
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the payload while computing its checksum and rejects it if the trailer does not match.
+     * Files written before trailers existed are read as a whole without verification.
+     */
+    public static <T> T read(Path file, StreamReader<T> reader) throws IOException {
+        long size = Files.size(file);
+        long length = -1;
+        long expectedCrc = 0;
+        if (size >= TRAILER_SIZE) {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+                raf.seek(size - TRAILER_SIZE);
+                if (raf.readInt() == MAGIC) {
+                    length = raf.readLong();
+                    expectedCrc = raf.readLong();
+                    if (length != size - TRAILER_SIZE) {
+                        throw new IOException("length mismatch in " + file.getFileName());
+                    }
+                }
+            }
+        }
+        if (length < 0) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                return reader.read(in);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        try (InputStream raw = Files.newInputStream(file, StandardOpenOption.READ)) {
+            InputStream payload = new CheckedInputStream(new BoundedInputStream(raw, length), crc);
+            T value = reader.read(new NonClosingInputStream(payload));
+            // The parser may stop before the end of the payload
+            byte[] skip = new byte[8192];
+            while (payload.read(skip) != -1) {
+                // drain
+            }
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("checksum mismatch in " + file.getFileName());
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Variant of read working on a memory mapping of the file instead of heap buffers:
+     * the checksum is computed on the mapping and the reader pulls the payload straight from it,
+     * so repeated loads are served from the OS page cache.
+     *
+     * The mapping is released by the garbage collector, not when this method returns. Some
+     * platforms (Windows) refuse to replace a mapped file, which is why this is only used
+     * when asked for, e.g. by read-mostly instances.
+     */
+    public static <T> T readMapped(Path file, StreamReader<T> reader) throws IOException {
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return read(file, reader);
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ByteBuffer payload = mapping;
+        int size = mapping.capacity();
+        if (size >= TRAILER_SIZE && mapping.getInt(size - TRAILER_SIZE) == MAGIC) {
+            long length = mapping.getLong(size - TRAILER_SIZE + 4);
+            long expectedCrc = mapping.getLong(size - TRAILER_SIZE + 12);
+            if (length != size - TRAILER_SIZE) {
+                throw new IOException("length mismatch in " + file.getFileName());
+            }
+            payload = mapping.slice(0, (int) length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("checksum mismatch in " + file.getFileName());
+            }
+        }
+        return reader.read(new MappedInputStream(payload));
+    }
+
+    private static void syncDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform, the rename is still atomic
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The trailer still has to be written to the underlying file
+            flush();
+        }
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // Closed by AtomicFiles once the checksum has been verified
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Reads CSV rows into a reusable char window and splits them into fields without creating
+ * strings: a field is a range of the window, read through the accessors below. Strings are
+ * only made for the fields asked for, and repeated values (types, symbols) come from a small
+ * cache, so reading a row allocates nothing once the window is large enough.
+ *
+ * Rows end at a line break; blank rows are left to the caller to skip. Double quotes toggle
+ * quoting, so a comma between quotes does not split; the quotes themselves are dropped and
+ * fields are trimmed. The window is rewritten in place, so field ranges are only valid until
+ * the next call to nextRow().
+ */
+public class CsvTokenizer {
+
+    private static final int CACHE_SIZE = 512;
+    private static final int MAX_CACHED_LENGTH = 32;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Reader in;
+    private char[] buffer;
+    // Unread characters are buffer[position, limit)
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // Current row: the line is buffer[rowStart, rowEnd), field i is buffer[starts[i], ends[i])
+    private int rowStart;
+    private int rowEnd;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+    private long rowNumber;
+
+    private final String[] cache = new String[CACHE_SIZE];
+    private final String[] upperCache = new String[CACHE_SIZE];
+    private char[] scratch = new char[64];
+
+    public CsvTokenizer(Reader in) {
+        this(in, 64 * 1024);
+    }
+
+    public CsvTokenizer(Reader in, int bufferSize) {
+        this.in = in;
+        this.buffer = new char[Math.max(bufferSize, 256)];
+    }
+
+    /**
+     * Reads and splits the next row. Returns false at the end of the input.
+     */
+    public boolean nextRow() throws IOException {
+        int lineEnd;
+        while ((lineEnd = findLineEnd()) < 0) {
+            if (endOfInput) {
+                if (position == limit) {
+                    return false;
+                }
+                // Last line without a line break
+                lineEnd = limit;
+                break;
+            }
+            fill();
+        }
+        rowStart = position;
+        rowEnd = lineEnd;
+        position = lineEnd < limit ? lineEnd + 1 : lineEnd;
+        rowNumber++;
+        split();
+        return true;
+    }
+
+    private int findLineEnd() {
+        for (int i = position; i < limit; i++) {
+            // As BufferedReader.readLine; "\r\n" reads as a line and a blank one
+            if (buffer[i] == '\n' || buffer[i] == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Moves the unread part to the front, growing the window for lines longer than it
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            char[] larger = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    // Drops the quotes by compacting each field in place, then trims it
+    private void split() {
+        fieldCount = 0;
+        int write = rowStart;
+        int fieldStart = rowStart;
+        boolean inQuotes = false;
+        for (int read = rowStart; read < rowEnd; read++) {
+            char c = buffer[read];
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ',' && !inQuotes) {
+                addField(fieldStart, write);
+                write = read + 1;
+                fieldStart = write;
+            } else {
+                buffer[write++] = c;
+            }
+        }
+        addField(fieldStart, write);
+    }
+
+    private void addField(int start, int end) {
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        if (fieldCount == starts.length) {
+            int[] largerStarts = new int[fieldCount * 2];
+            int[] largerEnds = new int[fieldCount * 2];
+            System.arraycopy(starts, 0, largerStarts, 0, fieldCount);
+            System.arraycopy(ends, 0, largerEnds, 0, fieldCount);
+            starts = largerStarts;
+            ends = largerEnds;
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Line number of the current row, from 1.
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * Whether the row has nothing but whitespace.
+     */
+    public boolean isBlank() {
+        return fieldCount == 1 && starts[0] == ends[0];
+    }
+
+    public int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    public char charAt(int field, int index) {
+        return buffer[starts[field] + index];
+    }
+
+    /**
+     * The field as a string, shared with earlier rows holding the same short value.
+     */
+    public String getString(int field) {
+        return cached(field, false);
+    }
+
+    /**
+     * The field upper cased, shared like getString.
+     */
+    public String getUpperString(int field) {
+        return cached(field, true);
+    }
+
+    private String cached(int field, boolean upper) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length > MAX_CACHED_LENGTH) {
+            String value = new String(buffer, start, length);
+            return upper ? value.toUpperCase() : value;
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = buffer[i];
+            hash = 31 * hash + (upper ? Character.toUpperCase(c) : c);
+        }
+        String[] strings = upper ? upperCache : cache;
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String candidate = strings[slot];
+        if (candidate != null && candidate.length() == length && matches(candidate, start, upper)) {
+            return candidate;
+        }
+        String value = new String(buffer, start, length);
+        if (upper) {
+            value = value.toUpperCase();
+        }
+        strings[slot] = value;
+        return value;
+    }
+
+    private boolean matches(String candidate, int start, boolean upper) {
+        for (int i = 0; i < candidate.length(); i++) {
+            char c = buffer[start + i];
+            if (candidate.charAt(i) != (upper ? Character.toUpperCase(c) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lenient number as found in exports: commas are read as decimal points and any character
+     * other than digits and points is ignored ("$1.5" is 1.5, "-2" is 2). Anything that does
+     * not leave a single number, e.g. two decimal points or no digit, reads as 0.
+     */
+    public double getLenientDouble(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        boolean exact = true;
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa == 0 && c == '0') {
+                    // Leading zeros are not significant
+                    if (point) {
+                        fractionDigits++;
+                    }
+                    digits++;
+                    continue;
+                }
+                if (mantissa >= 1L << 53) {
+                    exact = false;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' || c == ',') {
+                if (point) {
+                    return 0;
+                }
+                point = true;
+            }
+        }
+        if (digits == 0) {
+            return 0;
+        }
+        // Exact operands give the correctly rounded result, as Double.parseDouble would
+        if (exact && mantissa < 1L << 53 && fractionDigits < POWERS_OF_TEN.length) {
+            return mantissa / POWERS_OF_TEN[fractionDigits];
+        }
+        return parseSlow(start, end);
+    }
+
+    // Too many digits for the fast path: the kept characters through Double.parseDouble
+    private double parseSlow(int start, int end) {
+        if (scratch.length < end - start) {
+            scratch = new char[end - start];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                scratch[length++] = c;
+            } else if (c == '.' || c == ',') {
+                scratch[length++] = '.';
+            }
+        }
+        try {
+            return Double.parseDouble(new String(scratch, 0, length));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * ISO local date time, e.g. 2021-10-15T22:59:45, ignoring any 'Z'. Null when the field
+     * does not parse.
+     */
+    public LocalDateTime getDateTime(int field) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length > 0 && buffer[start + length - 1] == 'Z') {
+            length--;
+        }
+        if (length == 19 && buffer[start + 4] == '-' && buffer[start + 7] == '-' && buffer[start + 10] == 'T'
+                && buffer[start + 13] == ':' && buffer[start + 16] == ':') {
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            int hour = digits(start + 11, 2);
+            int minute = digits(start + 14, 2);
+            int second = digits(start + 17, 2);
+            if ((year | month | day | hour | minute | second) >= 0) {
+                try {
+                    return LocalDateTime.of(year, month, day, hour, minute, second);
+                } catch (DateTimeException e) {
+                    // Out of range, left to the full parser which may resolve it
+                }
+            }
+        }
+        try {
+            return LocalDateTime.parse(new String(buffer, starts[field], ends[field] - starts[field]).replace("Z", ""));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    // Value of count decimal digits, -1 if one is not a digit
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // The row as read, without its quotes
+    @Override
+    public String toString() {
+        return new String(buffer, rowStart, rowEnd - rowStart);
+    }
+}
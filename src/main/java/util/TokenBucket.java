@@ -0,0 +1,59 @@
+package util;
+
+/**
+ * Thread-safe token bucket: holds up to capacity tokens, refilled continuously at a fixed
+ * rate. Starts full, so a burst of capacity calls goes through at once.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(int capacity, double tokensPerMinute) {
+        if (capacity < 1 || tokensPerMinute <= 0) {
+            throw new IllegalArgumentException("Capacity " + capacity + ", rate " + tokensPerMinute + "/min");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerMinute / 60_000_000_000.0;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Time until the next token, 0 if one is available.
+     */
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Empties the bucket, e.g. when the server says we went over its limit anyway.
+     */
+    public synchronized void drain() {
+        refill();
+        tokens = 0;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
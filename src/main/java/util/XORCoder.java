@@ -1,5 +1,8 @@
 package util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.util.Base64;
 
 /**
@@ -14,21 +17,93 @@ import java.util.Base64;
  */
 public class XORCoder {
 
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     public static byte[] codeDecode(final byte[] input, final byte[] secret) {
-        final byte[] output = new byte[input.length];
-        if (secret.length == 0) {
-            throw new IllegalArgumentException("empty security key");
+        final byte[] output = input.clone();
+        new Key(secret).apply(output, 0, output.length, 0);
+        return output;
+    }
+
+    /**
+     * Codes the buffer without allocating, for callers that own it.
+     */
+    public static void codeDecodeInPlace(final byte[] data, final byte[] secret) {
+        new Key(secret).apply(data, 0, data.length, 0);
+    }
+
+    /**
+     * Key prepared for coding 8 bytes at a time.
+     * For every key position the next 8 key bytes are packed in a long, so the coding loop
+     * is one load, one xor and one store per word and wraps the key with a table lookup.
+     */
+    public static class Key {
+        private final byte[] secret;
+        // words[p] = secret[p], secret[p+1], ..., secret[p+7] (key indices wrapped), little endian
+        private final long[] words;
+        // next[p] = (p + 8) % secret.length
+        private final int[] next;
+
+        public Key(byte[] secret) {
+            if (secret.length == 0) {
+                throw new IllegalArgumentException("empty security key");
+            }
+            this.secret = secret.clone();
+            this.words = new long[secret.length];
+            this.next = new int[secret.length];
+            for (int p = 0; p < secret.length; p++) {
+                long word = 0;
+                for (int i = 7; i >= 0; i--) {
+                    word = (word << 8) | (this.secret[(p + i) % secret.length] & 0xFF);
+                }
+                words[p] = word;
+                next[p] = (p + 8) % secret.length;
+            }
+        }
+
+        public int length() {
+            return secret.length;
         }
-        int spos = 0;
-        for (int pos = 0; pos < input.length; ++pos) {
-            output[pos] = (byte) (input[pos] ^ secret[spos]);
-            ++spos;
-            if (spos >= secret.length) {
-                spos = 0;
+
+        /**
+         * Codes data[off, off+len) in place starting at key position keyPos.
+         * Returns the key position following the last coded byte, to continue with the next chunk.
+         */
+        public int apply(byte[] data, int off, int len, int keyPos) {
+            int pos = off;
+            int end = off + len;
+            int spos = keyPos;
+            for (; pos <= end - 8; pos += 8) {
+                LONGS.set(data, pos, (long) LONGS.get(data, pos) ^ words[spos]);
+                spos = next[spos];
+            }
+            for (; pos < end; pos++) {
+                data[pos] ^= secret[spos];
+                if (++spos >= secret.length) {
+                    spos = 0;
+                }
             }
+            return spos;
         }
-        return output;
-    }
 
+        /**
+         * Codes src[srcOff, srcOff+len) into dst starting at dstOff; the source is left untouched.
+         */
+        public int apply(byte[] src, int srcOff, byte[] dst, int dstOff, int len, int keyPos) {
+            System.arraycopy(src, srcOff, dst, dstOff, len);
+            return apply(dst, dstOff, len, keyPos);
+        }
+
+        /**
+         * Key position reached after skipping n bytes from keyPos.
+         */
+        public int advance(int keyPos, long n) {
+            return (int) ((keyPos + n) % secret.length);
+        }
 
+        public int codeByte(int b, int keyPos) {
+            return (b ^ secret[keyPos]) & 0xFF;
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes an XOR coded stream on the fly.
+ * The key position is kept across reads, so the result is the same as XORCoder.codeDecode
+ * on the whole content without ever holding it in memory.
+ */
+public class XORInputStream extends FilterInputStream {
+
+    private final XORCoder.Key key;
+    private int spos;
+
+    public XORInputStream(InputStream in, byte[] secret) {
+        this(in, new XORCoder.Key(secret));
+    }
+
+    public XORInputStream(InputStream in, XORCoder.Key key) {
+        super(in);
+        this.key = key;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            return -1;
+        }
+        b = key.codeByte(b, spos);
+        spos = key.advance(spos, 1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            // Decoded in place, in the caller's buffer
+            spos = key.apply(b, off, n, spos);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        if (skipped > 0) {
+            spos = key.advance(spos, skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes everything written to it with XOR before passing it on.
+ * Chunks are coded through a small reusable buffer (the caller's array is never modified)
+ * and the key position is kept between writes.
+ */
+public class XOROutputStream extends FilterOutputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final XORCoder.Key key;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int spos;
+
+    public XOROutputStream(OutputStream out, byte[] secret) {
+        this(out, new XORCoder.Key(secret));
+    }
+
+    public XOROutputStream(OutputStream out, XORCoder.Key key) {
+        super(out);
+        this.key = key;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(key.codeByte(b, spos));
+        spos = key.advance(spos, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, buffer.length);
+            spos = key.apply(b, off, buffer, 0, chunk, spos);
+            out.write(buffer, 0, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import model.Asset;
+import model.AssetType;
+import model.Portfolio;
+import model.Transaction;
+import model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Checks that a JSON save only serializes the portfolios that changed since the last one,
+ * and that reusing the others gives the same bytes as serializing everything.
+ * Works on a generated user, the data directory is not touched. Exits with 1 on failure.
+ *
+ * Usage (after mvn test-compile): java -cp target/classes:target/test-classes:[dependencies] service.FragmentCacheCheck
+ */
+public class FragmentCacheCheck {
+
+    private static final int PORTFOLIOS = 5;
+    private static final int ASSETS = 50;
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        ObjectMapper mapper = UserService.createObjectMapper();
+        JsonStorageCodec codec = new JsonStorageCodec(mapper);
+        User user = createUser();
+
+        save(codec, user, mapper, "first save", PORTFOLIOS, 0);
+        long revision = user.getRevision();
+        save(codec, user, mapper, "nothing changed", 0, PORTFOLIOS);
+        check("user revision unchanged without changes", user.getRevision() == revision);
+
+        Portfolio changed = user.getPortfolios().get(2);
+        changed.getAssets().get(7).setQuantity(123.5);
+        check("user revision moved with an asset change", user.getRevision() > revision);
+        save(codec, user, mapper, "one asset changed", 1, PORTFOLIOS - 1);
+
+        Iterator<Asset> assets = user.getPortfolios().get(4).getAssets().iterator();
+        assets.next();
+        assets.remove();
+        save(codec, user, mapper, "asset removed through an iterator", 1, PORTFOLIOS - 1);
+
+        user.getPortfolios().get(0).getTransactionHistory()
+                .add(new Transaction("AAA", "BUY", 1, 10, LocalDateTime.of(2024, 1, 2, 3, 4, 5)));
+        save(codec, user, mapper, "transaction recorded", 1, PORTFOLIOS - 1);
+
+        save(codec, user, mapper, "nothing changed again", 0, PORTFOLIOS);
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static User createUser() {
+        User user = new User("Fragment Check", "fragments@example.com", "secret");
+        for (int p = 0; p < PORTFOLIOS; p++) {
+            Portfolio portfolio = new Portfolio("Portfolio " + p);
+            for (int a = 0; a < ASSETS; a++) {
+                String symbol = "S" + p + "_" + a;
+                portfolio.addAsset(new Asset(symbol, symbol, AssetType.STOCK, a + 1, 10 + a));
+            }
+            user.addPortfolio(portfolio);
+        }
+        return user;
+    }
+
+    // Saves once and compares the portfolios serialized and copied with the expected counts
+    private static void save(JsonStorageCodec codec, User user, ObjectMapper mapper, String step,
+                             long expectedMisses, long expectedHits) throws IOException {
+        long misses = codec.getFragmentMisses();
+        long hits = codec.getFragmentHits();
+        ByteArrayOutputStream cached = new ByteArrayOutputStream();
+        codec.write(new UserStore.ShardData(user, 0), cached);
+        misses = codec.getFragmentMisses() - misses;
+        hits = codec.getFragmentHits() - hits;
+
+        // A codec without fragments serializes everything
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        new JsonStorageCodec(mapper).write(new UserStore.ShardData(user, 0), full);
+
+        System.out.printf("%-36s serialized %d, copied %d%n", step, misses, hits);
+        check(step + ": serialized " + expectedMisses, misses == expectedMisses);
+        check(step + ": copied " + expectedHits, hits == expectedHits);
+        check(step + ": same output as a full save", Arrays.equals(cached.toByteArray(), full.toByteArray()));
+    }
+
+    private static void check(String what, boolean passed) {
+        if (!passed) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares CsvTokenizer with the line splitting it replaced in ImportService, on generated
+ * Coinbase-style rows held in memory. Both read the same fields as the Coinbase import
+ * (timestamp, type, asset, quantity, currency, spot price, total); the values are folded into
+ * a checksum, which must be the same for both or the run exits with 1. Then each is timed,
+ * along with the bytes allocated per row when the JVM reports them.
+ *
+ * Usage (after mvn test-compile): java -cp target/classes:target/test-classes util.CsvTokenizerBenchmark [rows]
+ */
+public class CsvTokenizerBenchmark {
+
+    private static final int BENCHMARK_ROUNDS = 5;
+    private static final int DEFAULT_ROWS = 1_000_000;
+    private static final String[] TYPES = { "Buy", "Sell", "Send", "Receive", "Convert" };
+    private static final String[] ASSETS = { "BTC", "ETH", "SOL", "ADA", "DOT", "USDC", "LINK", "XRP" };
+
+    private interface Parser {
+        long parse(String csv) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        String csv = generate(rows);
+
+        long expected = parseReference(csv);
+        long actual = parseTokenizer(csv);
+        if (expected != actual) {
+            System.out.println("Checksums differ: " + expected + " (old) vs " + actual + " (CsvTokenizer)");
+            System.exit(1);
+        }
+        System.out.println("Same values read by both");
+
+        time("old split + parseDouble", rows, CsvTokenizerBenchmark::parseReference, csv);
+        time("CsvTokenizer", rows, CsvTokenizerBenchmark::parseTokenizer, csv);
+    }
+
+    private static String generate(int rows) {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder(rows * 90);
+        for (int i = 0; i < rows; i++) {
+            String asset = ASSETS[random.nextInt(ASSETS.length)];
+            double quantity = random.nextInt(1_000_000) / 10_000.0;
+            double price = random.nextInt(10_000_000) / 100.0;
+            csv.append(String.format(Locale.ROOT, "2021-%02d-%02dT%02d:%02d:%02dZ,%s,%s,%s,USD,%s,%s,\"%s\",%s%n",
+                    1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60),
+                    random.nextInt(60), TYPES[random.nextInt(TYPES.length)], asset, quantity, price,
+                    Math.round(quantity * price * 100) / 100.0, Math.round(quantity * price * 101) / 100.0,
+                    "Bought " + quantity + " " + asset + ", fees included"));
+        }
+        return csv.toString();
+    }
+
+    // ImportService.parseCoinbaseLine before CsvTokenizer, reading the same fields
+    private static long parseReference(String csv) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        long checksum = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = parseCSVLine(line);
+            if (parts.length < 8) {
+                continue;
+            }
+            LocalDateTime timestamp = LocalDateTime.parse(parts[0].trim().replace("Z", ""));
+            String type = parts[1].trim().toUpperCase();
+            String asset = parts[2].trim();
+            double quantity = parseDouble(parts[3]);
+            String currency = parts[4].trim();
+            double spotPrice = parseDouble(parts[5]);
+            double total = parseDouble(parts[7]);
+            checksum = fold(checksum, timestamp, type, asset, quantity, currency, spotPrice, total);
+        }
+        return checksum;
+    }
+
+    private static String[] parseCSVLine(String line) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ',' && !inQuotes) {
+                parts.add(current.toString().trim());
+                current = new StringBuilder();
+            } else {
+                current.append(c);
+            }
+        }
+        parts.add(current.toString().trim());
+        return parts.toArray(new String[0]);
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            String cleaned = value.replace(",", ".").replaceAll("[^0-9.]", "");
+            return Double.parseDouble(cleaned);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static long parseTokenizer(String csv) throws IOException {
+        CsvTokenizer row = new CsvTokenizer(new StringReader(csv));
+        long checksum = 0;
+        while (row.nextRow()) {
+            if (row.isBlank() || row.getFieldCount() < 8) {
+                continue;
+            }
+            checksum = fold(checksum, row.getDateTime(0), row.getUpperString(1), row.getString(2),
+                    row.getLenientDouble(3), row.getString(4), row.getLenientDouble(5), row.getLenientDouble(7));
+        }
+        return checksum;
+    }
+
+    private static long fold(long checksum, LocalDateTime timestamp, String type, String asset, double quantity,
+                             String currency, double spotPrice, double total) {
+        long h = checksum * 31 + timestamp.hashCode();
+        h = h * 31 + type.hashCode();
+        h = h * 31 + asset.hashCode();
+        h = h * 31 + Double.hashCode(quantity);
+        h = h * 31 + currency.hashCode();
+        h = h * 31 + Double.hashCode(spotPrice);
+        return h * 31 + Double.hashCode(total);
+    }
+
+    private static void time(String mode, int rows, Parser parser, String csv) throws IOException {
+        // Round 0 warms up the JIT and is not counted
+        long nanos = 0;
+        long allocated = 0;
+        for (int round = 0; round <= BENCHMARK_ROUNDS; round++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            parser.parse(csv);
+            long elapsed = System.nanoTime() - start;
+            if (round > 0) {
+                nanos += elapsed;
+                allocated += allocatedBytes() - bytesBefore;
+            }
+        }
+        double seconds = nanos / 1e9 / BENCHMARK_ROUNDS;
+        String perRow = allocatedBytes() < 0 ? "n/a" : String.valueOf(allocated / BENCHMARK_ROUNDS / rows);
+        System.out.printf("%-24s %6.2fM rows/s  %6s bytes/row  (%d rows, avg of %d rounds)%n",
+                mode, rows / seconds / 1e6, perRow, rows, BENCHMARK_ROUNDS);
+    }
+
+    // Bytes allocated so far by this thread, -1 when the JVM does not tell
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
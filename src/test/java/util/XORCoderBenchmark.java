@@ -0,0 +1,121 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares XORCoder with the byte at a time loop it replaced, on random data.
+ * First checks that every mode gives the same bytes as the old loop (several key lengths,
+ * chunk sizes and both streams), then times each one. Exits with 1 if an output differs.
+ *
+ * Usage (after mvn test-compile): java -cp target/classes:target/test-classes util.XORCoderBenchmark [megabytes]
+ */
+public class XORCoderBenchmark {
+
+    private static final int BENCHMARK_ROUNDS = 10;
+    private static final int DEFAULT_MEGABYTES = 16;
+    private static final byte[] SECRET = "portfolio_secret_key_2025".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MEGABYTES;
+        byte[] data = new byte[megabytes * 1024 * 1024];
+        new Random(42).nextBytes(data);
+
+        if (!verify()) {
+            System.exit(1);
+        }
+
+        byte[] work = data.clone();
+        time("old per-byte loop", data.length, () -> referenceCodeDecode(data, SECRET));
+        time("codeDecode (copy)", data.length, () -> XORCoder.codeDecode(data, SECRET));
+        time("codeDecodeInPlace", data.length, () -> XORCoder.codeDecodeInPlace(work, SECRET));
+    }
+
+    /**
+     * The loop XORCoder.codeDecode used before coding 8 bytes at a time, kept as the reference.
+     */
+    static byte[] referenceCodeDecode(byte[] input, byte[] secret) {
+        final byte[] output = new byte[input.length];
+        int spos = 0;
+        for (int pos = 0; pos < input.length; ++pos) {
+            output[pos] = (byte) (input[pos] ^ secret[spos]);
+            ++spos;
+            if (spos >= secret.length) {
+                spos = 0;
+            }
+        }
+        return output;
+    }
+
+    private static boolean verify() throws IOException {
+        Random random = new Random(7);
+        boolean ok = true;
+        for (int keyLength : new int[] { 1, 3, 7, 8, 9, 25, 64 }) {
+            byte[] secret = new byte[keyLength];
+            random.nextBytes(secret);
+            for (int length : new int[] { 0, 1, 7, 8, 9, 100, 4097 }) {
+                byte[] input = new byte[length];
+                random.nextBytes(input);
+                byte[] expected = referenceCodeDecode(input, secret);
+
+                ok &= check("codeDecode", keyLength, length, expected, XORCoder.codeDecode(input, secret));
+                byte[] inPlace = input.clone();
+                XORCoder.codeDecodeInPlace(inPlace, secret);
+                ok &= check("codeDecodeInPlace", keyLength, length, expected, inPlace);
+
+                // Chained chunks of every size up to 17 bytes
+                for (int chunk = 1; chunk <= 17; chunk++) {
+                    XORCoder.Key key = new XORCoder.Key(secret);
+                    byte[] chained = input.clone();
+                    int keyPos = 0;
+                    for (int off = 0; off < length; off += chunk) {
+                        keyPos = key.apply(chained, off, Math.min(chunk, length - off), keyPos);
+                    }
+                    ok &= check("Key.apply in chunks of " + chunk, keyLength, length, expected, chained);
+                }
+
+                XORCoder.Key key = new XORCoder.Key(secret);
+                ByteArrayOutputStream coded = new ByteArrayOutputStream();
+                try (OutputStream out = new XOROutputStream(coded, key)) {
+                    out.write(input, 0, Math.min(5, length));
+                    out.write(input, Math.min(5, length), length - Math.min(5, length));
+                }
+                ok &= check("XOROutputStream", keyLength, length, expected, coded.toByteArray());
+                try (InputStream in = new XORInputStream(new ByteArrayInputStream(expected), key)) {
+                    ok &= check("XORInputStream", keyLength, length, input, in.readAllBytes());
+                }
+            }
+        }
+        System.out.println(ok ? "Output identical to the old loop" : "Output differs from the old loop");
+        return ok;
+    }
+
+    private static boolean check(String mode, int keyLength, int length, byte[] expected, byte[] actual) {
+        if (Arrays.equals(expected, actual)) {
+            return true;
+        }
+        System.out.println("MISMATCH: " + mode + ", key of " + keyLength + " bytes, " + length + " bytes");
+        return false;
+    }
+
+    private static void time(String mode, int bytes, Runnable task) {
+        // Round 0 warms up the JIT and is not counted
+        long nanos = 0;
+        for (int round = 0; round <= BENCHMARK_ROUNDS; round++) {
+            long start = System.nanoTime();
+            task.run();
+            if (round > 0) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        double seconds = nanos / 1e9 / BENCHMARK_ROUNDS;
+        System.out.printf("%-20s %8.0f MB/s  (%d MB, avg of %d rounds)%n",
+                mode, bytes / 1024.0 / 1024.0 / seconds, bytes / 1024 / 1024, BENCHMARK_ROUNDS);
+    }
+}